@@ -7,15 +7,26 @@ import com.fusionslab.permissionshop.config.ConfigManager;
 import com.fusionslab.permissionshop.config.Messages;
 import com.fusionslab.permissionshop.economy.EconomyManager;
 import com.fusionslab.permissionshop.listeners.PlayerJoinListener;
+import com.fusionslab.permissionshop.listeners.PlayerPreLoginListener;
 import com.fusionslab.permissionshop.listeners.PlayerQuitListener;
+import com.fusionslab.permissionshop.managers.CartManager;
 import com.fusionslab.permissionshop.managers.PermissionManager;
 import com.fusionslab.permissionshop.managers.PurchaseManager;
 import com.fusionslab.permissionshop.managers.TimerManager;
 import com.fusionslab.permissionshop.managers.UsageManager;
+import com.fusionslab.permissionshop.managers.UseCounterManager;
+import com.fusionslab.permissionshop.storage.AsyncStorage;
+import com.fusionslab.permissionshop.storage.AsyncStorageManager;
+import com.fusionslab.permissionshop.storage.BatchWriter;
+import com.fusionslab.permissionshop.storage.MySQLStorage;
 import com.fusionslab.permissionshop.storage.SQLiteStorage;
 import com.fusionslab.permissionshop.storage.StorageManager;
+import com.fusionslab.permissionshop.storage.WriteBehindStorage;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.concurrent.Executor;
+
 /**
  * Main class for the PermissionsShop plugin
  */
@@ -27,9 +38,12 @@ public class PermissionsShop extends JavaPlugin {
     private EconomyManager economyManager;
     private PermissionManager permissionManager;
     private PurchaseManager purchaseManager;
+    private CartManager cartManager;
     private TimerManager timerManager;
     private UsageManager usageManager;
-    private StorageManager storageManager;
+    private UseCounterManager useCounterManager;
+    private AsyncStorageManager storageManager;
+    private final Executor mainThreadExecutor = task -> getServer().getScheduler().runTask(this, task);
 
     @Override
     public void onEnable() {
@@ -50,15 +64,22 @@ public class PermissionsShop extends JavaPlugin {
         // Setup storage
         String storageType = getConfig().getString("storage.type", "sqlite").toLowerCase();
         if (storageType.equals("mysql")) {
-            // MySQL implementation would go here
-            this.storageManager = new SQLiteStorage(this); // Fallback to SQLite for now
+            this.storageManager = setupStorage(new MySQLStorage(this));
         } else {
-            this.storageManager = new SQLiteStorage(this);
+            this.storageManager = setupStorage(new SQLiteStorage(this));
         }
 
+        // Save uses that were journaled but not stored before the last shutdown
+        this.useCounterManager = new UseCounterManager(this);
+        useCounterManager.replayJournal();
+
+        // Deactivate timed purchases that expired while their owners were offline
+        storageManager.deactivateExpiredPurchasesAsync(System.currentTimeMillis());
+
         // Initialize managers
         this.permissionManager = new PermissionManager(this);
         this.purchaseManager = new PurchaseManager(this);
+        this.cartManager = new CartManager();
         this.timerManager = new TimerManager(this);
         this.usageManager = new UsageManager(this);
 
@@ -68,28 +89,71 @@ public class PermissionsShop extends JavaPlugin {
         getCommand("psadmin").setExecutor(new PermShopAdminCommand(this));
 
         // Register listeners
+        getServer().getPluginManager().registerEvents(new PlayerPreLoginListener(this), this);
         getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
         getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), this);
 
         // Start tasks
         this.timerManager.startTimerTask();
+        this.useCounterManager.startFlushTask();
+        this.configManager.startWatcher();
 
         getLogger().info("PermissionsShop has been enabled!");
     }
 
     @Override
     public void onDisable() {
+        if (configManager != null) {
+            configManager.shutdown();
+        }
+
         if (timerManager != null) {
             timerManager.cancelTimerTask();
         }
 
+        if (purchaseManager != null) {
+            // Purchases in progress can't reach their main thread stages any more
+            purchaseManager.shutdown();
+        }
+
+        if (permissionManager != null) {
+            // Scheduled batch flushes don't run once the plugin is disabled
+            permissionManager.flushPermissionChanges();
+        }
+
+        if (economyManager != null) {
+            // Let refunds of failed purchases go through
+            economyManager.shutdown();
+        }
+
+        if (useCounterManager != null) {
+            // Save use counters that were only journaled so far
+            useCounterManager.shutdown();
+        }
+
         if (storageManager != null) {
+            // Write any queued purchase updates before closing
+            storageManager.flush();
             storageManager.closeConnection();
         }
 
         getLogger().info("PermissionsShop has been disabled!");
     }
 
+    /**
+     * Wraps a storage in the write-behind queue if enabled and the async I/O layer
+     *
+     * @param storage Initialized storage
+     * @param <S> Storage type
+     * @return Storage to use
+     */
+    private <S extends StorageManager & BatchWriter> AsyncStorageManager setupStorage(S storage) {
+        if (getConfig().getBoolean("storage.write_behind.enabled", true)) {
+            return new AsyncStorage(this, new WriteBehindStorage(this, storage));
+        }
+        return new AsyncStorage(this, storage);
+    }
+
     /**
      * Get the plugin instance
      * @return PermissionsShop instance
@@ -102,6 +166,15 @@ public class PermissionsShop extends JavaPlugin {
         return configManager;
     }
 
+    /**
+     * Gets the main configuration, as last loaded or reloaded by the config manager
+     * @return Main configuration
+     */
+    @Override
+    public FileConfiguration getConfig() {
+        return configManager != null ? configManager.getConfig() : super.getConfig();
+    }
+
     public Messages getMessages() {
         return messages;
     }
@@ -118,6 +191,10 @@ public class PermissionsShop extends JavaPlugin {
         return purchaseManager;
     }
 
+    public CartManager getCartManager() {
+        return cartManager;
+    }
+
     public TimerManager getTimerManager() {
         return timerManager;
     }
@@ -126,7 +203,20 @@ public class PermissionsShop extends JavaPlugin {
         return usageManager;
     }
 
-    public StorageManager getStorageManager() {
+    public UseCounterManager getUseCounterManager() {
+        return useCounterManager;
+    }
+
+    public AsyncStorageManager getStorageManager() {
         return storageManager;
     }
+
+    /**
+     * Gets an executor that runs tasks on the main server thread
+     *
+     * @return Main thread executor
+     */
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
 }
\ No newline at end of file
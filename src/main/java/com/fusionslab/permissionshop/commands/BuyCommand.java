@@ -1,11 +1,17 @@
 package com.fusionslab.permissionshop.commands;
 
 import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.economy.EconomyManager;
+import com.fusionslab.permissionshop.models.PurchaseType;
+import com.fusionslab.permissionshop.models.ShopItem;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Command for buying permissions and commands
  */
@@ -38,17 +44,182 @@ public class BuyCommand implements CommandExecutor {
             return true;
         }
 
-        // Get item ID
-        String itemId = args[0];
-
-        // Try to make purchase
-        boolean success = plugin.getPurchaseManager().makePurchase(player, itemId);
+        if (args[0].equalsIgnoreCase("cart")) {
+            cartCommand(player, args);
+            return true;
+        }
 
-        if (!success) {
-            // Error message already sent in makePurchase
+        // Get item ID and quantity
+        String itemId = args[0];
+        Integer quantity = args.length > 1 ? parseQuantity(player, args[1]) : Integer.valueOf(1);
+        if (quantity == null) {
             return true;
         }
 
+        // Try to make purchase, messages are sent by makePurchase
+        plugin.getPurchaseManager().makePurchase(player, itemId, quantity);
+
         return true;
     }
-}
\ No newline at end of file
+
+    /**
+     * Handles the cart subcommands
+     *
+     * @param player Player using the cart
+     * @param args Command arguments, starting with "cart"
+     */
+    private void cartCommand(Player player, String[] args) {
+        String action = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : "show";
+
+        switch (action) {
+            case "show":
+                showCart(player);
+                break;
+            case "add":
+                if (args.length < 3) {
+                    plugin.getMessages().sendPrefixedMessage(player, "cart.usage");
+                    return;
+                }
+                Integer quantity = args.length > 3 ? parseQuantity(player, args[3]) : Integer.valueOf(1);
+                if (quantity != null) {
+                    addToCart(player, args[2], quantity);
+                }
+                break;
+            case "remove":
+                if (args.length < 3) {
+                    plugin.getMessages().sendPrefixedMessage(player, "cart.usage");
+                    return;
+                }
+                ShopItem removed = plugin.getConfigManager().getShopItem(args[2]);
+                if (plugin.getCartManager().remove(player.getUniqueId(), args[2])) {
+                    plugin.getMessages().sendPrefixedMessage(player, "cart.removed",
+                            "item", removed != null ? removed.getName() : args[2]);
+                } else {
+                    plugin.getMessages().sendPrefixedMessage(player, "cart.not_in_cart");
+                }
+                break;
+            case "clear":
+                plugin.getCartManager().clear(player.getUniqueId());
+                plugin.getMessages().sendPrefixedMessage(player, "cart.cleared");
+                break;
+            case "checkout":
+                checkout(player);
+                break;
+            default:
+                plugin.getMessages().sendPrefixedMessage(player, "cart.usage");
+                break;
+        }
+    }
+
+    /**
+     * Adds an item to the player's cart if the total quantity stays within the limits
+     *
+     * @param player Player using the cart
+     * @param itemId Item ID
+     * @param quantity Quantity to add
+     */
+    private void addToCart(Player player, String itemId, int quantity) {
+        ShopItem item = plugin.getConfigManager().getShopItem(itemId);
+        if (item == null) {
+            plugin.getMessages().sendPrefixedMessage(player, "error.item_not_found");
+            return;
+        }
+
+        int inCart = plugin.getCartManager().getCart(player.getUniqueId()).getOrDefault(itemId, 0);
+
+        if (item.getType() == PurchaseType.PERMANENT_PERMISSION && inCart + quantity > 1) {
+            plugin.getMessages().sendPrefixedMessage(player, "error.single_quantity", "item", item.getName());
+            return;
+        }
+
+        int maxQuantity = plugin.getConfig().getInt("shop.max_quantity", 64);
+        if (inCart + quantity > maxQuantity) {
+            plugin.getMessages().sendPrefixedMessage(player, "error.invalid_quantity", "max", maxQuantity);
+            return;
+        }
+
+        int total = plugin.getCartManager().add(player.getUniqueId(), itemId, quantity);
+        plugin.getMessages().sendPrefixedMessage(player, "cart.added",
+                "item", item.getName(),
+                "quantity", total);
+    }
+
+    /**
+     * Shows the player's cart with the total price
+     *
+     * @param player Player using the cart
+     */
+    private void showCart(Player player) {
+        Map<String, Integer> cart = plugin.getCartManager().getCart(player.getUniqueId());
+        if (cart.isEmpty()) {
+            plugin.getMessages().sendPrefixedMessage(player, "cart.empty");
+            return;
+        }
+
+        EconomyManager economy = plugin.getEconomyManager();
+        double total = 0;
+
+        plugin.getMessages().sendMessage(player, "cart.header");
+
+        for (Map.Entry<String, Integer> entry : cart.entrySet()) {
+            ShopItem item = plugin.getConfigManager().getShopItem(entry.getKey());
+            if (item == null) {
+                continue;
+            }
+
+            double price = item.getPrice() * entry.getValue();
+            total += price;
+
+            plugin.getMessages().sendMessage(player, "cart.item",
+                    "id", item.getId(),
+                    "name", item.getName(),
+                    "quantity", entry.getValue(),
+                    "price", economy.format(price));
+        }
+
+        plugin.getMessages().sendMessage(player, "cart.total", "price", economy.format(total));
+    }
+
+    /**
+     * Buys everything in the player's cart as one purchase
+     *
+     * @param player Player using the cart
+     */
+    private void checkout(Player player) {
+        Map<String, Integer> cart = plugin.getCartManager().getCart(player.getUniqueId());
+        if (cart.isEmpty()) {
+            plugin.getMessages().sendPrefixedMessage(player, "cart.empty");
+            return;
+        }
+
+        // Messages are sent by checkout, the cart is kept if the purchase failed.
+        // Only what was bought is removed, the player may have added more in the meantime.
+        plugin.getPurchaseManager().checkout(player, cart).thenAccept(success -> {
+            if (success) {
+                plugin.getCartManager().removePurchased(player.getUniqueId(), cart);
+            }
+        });
+    }
+
+    /**
+     * Parses a quantity argument
+     *
+     * @param player Player to send errors to
+     * @param arg Argument to parse
+     * @return Quantity or null if it's not a valid number
+     */
+    private Integer parseQuantity(Player player, String arg) {
+        int maxQuantity = plugin.getConfig().getInt("shop.max_quantity", 64);
+
+        try {
+            int quantity = Integer.parseInt(arg);
+            if (quantity >= 1 && quantity <= maxQuantity) {
+                return quantity;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+
+        plugin.getMessages().sendPrefixedMessage(player, "error.invalid_quantity", "max", maxQuantity);
+        return null;
+    }
+}
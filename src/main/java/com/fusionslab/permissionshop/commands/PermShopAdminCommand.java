@@ -1,7 +1,11 @@
 package com.fusionslab.permissionshop.commands;
 
 import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.economy.EconomyLatencyStats;
+import com.fusionslab.permissionshop.economy.EconomyManager;
+import com.fusionslab.permissionshop.managers.PurchaseSerializer;
 import com.fusionslab.permissionshop.models.Purchase;
+import com.fusionslab.permissionshop.models.ShopItem;
 import com.fusionslab.permissionshop.models.TimedPermission;
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
@@ -57,6 +61,12 @@ public class PermShopAdminCommand implements CommandExecutor {
             case "list":
                 listCommand(sender, args);
                 break;
+            case "economy":
+                economyCommand(sender);
+                break;
+            case "purchases":
+                purchasesCommand(sender);
+                break;
             default:
                 sendUsage(sender);
                 break;
@@ -76,6 +86,8 @@ public class PermShopAdminCommand implements CommandExecutor {
         sender.sendMessage("§c/psadmin give <player> <itemId> §7- Give a permission or command to a player");
         sender.sendMessage("§c/psadmin revoke <player> <itemId> §7- Revoke a permission or command from a player");
         sender.sendMessage("§c/psadmin list <player> §7- List a player's purchases");
+        sender.sendMessage("§c/psadmin economy §7- Show economy latency statistics");
+        sender.sendMessage("§c/psadmin purchases §7- Show purchase queue statistics");
     }
 
     /**
@@ -84,16 +96,49 @@ public class PermShopAdminCommand implements CommandExecutor {
      * @param sender Command sender
      */
     private void reloadCommand(CommandSender sender) {
-        // Reload configs
-        plugin.getConfigManager().reloadConfigs();
-        plugin.getMessages().loadMessages();
-
-        // Send success message
-        if (sender instanceof Player) {
-            plugin.getMessages().sendPrefixedMessage((Player) sender, "admin.reload_success");
-        } else {
-            sender.sendMessage("Configurations reloaded successfully.");
-        }
+        // Reload configs off the main thread, the result comes back on it
+        plugin.getConfigManager().reloadConfigsAsync().thenAccept(applied -> {
+            if (sender instanceof Player) {
+                plugin.getMessages().sendPrefixedMessage((Player) sender,
+                        applied ? "admin.reload_success" : "admin.reload_failed");
+            } else {
+                sender.sendMessage(applied ? "Configurations reloaded successfully." :
+                        "Reload failed, the previous configuration is still active. See the console for details.");
+            }
+        });
+    }
+
+    /**
+     * Handles the economy subcommand
+     *
+     * @param sender Command sender
+     */
+    private void economyCommand(CommandSender sender) {
+        EconomyManager economy = plugin.getEconomyManager();
+        EconomyLatencyStats stats = economy.getStats();
+
+        sender.sendMessage("§6§lEconomy provider:");
+        sender.sendMessage("§7Status: " + (economy.isDegraded() ? "§cslow, purchases paused" : "§ahealthy"));
+        sender.sendMessage(String.format("§7Calls: §f%d §7(failed: §f%d§7, timed out: §f%d§7)",
+                stats.getCalls(), stats.getFailures(), stats.getTimeouts()));
+        sender.sendMessage(String.format("§7Latency: §favg %.1fms§7, §fp95 %.1fms§7, §fmax %.1fms",
+                stats.getAverageMillis(), stats.getPercentileMillis(95), stats.getMaxMillis()));
+    }
+
+    /**
+     * Handles the purchases subcommand
+     *
+     * @param sender Command sender
+     */
+    private void purchasesCommand(CommandSender sender) {
+        PurchaseSerializer serializer = plugin.getPurchaseManager().getSerializer();
+
+        sender.sendMessage("§6§lPurchases:");
+        sender.sendMessage(String.format("§7Submitted: §f%d §7(pending: §f%d§7)",
+                serializer.getSubmitted(), serializer.getPending()));
+        sender.sendMessage(String.format("§7Queued behind the same player: §f%d §7(avg wait: §f%.1fms§7, longest queue: §f%d§7)",
+                serializer.getContended(), serializer.getAverageWaitMillis(), serializer.getMaxQueueLength()));
+        sender.sendMessage(String.format("§7Rejected with a full queue: §f%d", serializer.getRejected()));
     }
 
     /**
@@ -125,13 +170,13 @@ public class PermShopAdminCommand implements CommandExecutor {
         }
 
         // Make purchase for free
-        boolean success = plugin.getPurchaseManager().makePurchase(target, itemId);
-
-        if (success) {
-            sender.sendMessage("§aGave " + itemId + " to " + target.getName() + " successfully.");
-        } else {
-            sender.sendMessage("§cFailed to give " + itemId + " to " + target.getName() + ".");
-        }
+        plugin.getPurchaseManager().makePurchase(target, itemId).thenAccept(success -> {
+            if (success) {
+                sender.sendMessage("§aGave " + itemId + " to " + target.getName() + " successfully.");
+            } else {
+                sender.sendMessage("§cFailed to give " + itemId + " to " + target.getName() + ".");
+            }
+        });
     }
 
     /**
@@ -157,37 +202,39 @@ public class PermShopAdminCommand implements CommandExecutor {
         }
 
         // Get item
-        if (plugin.getConfigManager().getShopItem(itemId) == null) {
+        ShopItem item = plugin.getConfigManager().getShopItem(itemId);
+        if (item == null) {
             sender.sendMessage("§cItem not found: " + itemId);
             return;
         }
 
         UUID playerUuid = target.getUniqueId();
 
-        // Find the purchase
-        List<Purchase> purchases = plugin.getStorageManager().getPlayerPurchases(playerUuid);
-        boolean found = false;
+        // Find the purchase off the main thread
+        plugin.getStorageManager().getActivePlayerPurchasesAsync(playerUuid).thenAcceptAsync(purchases -> {
+            boolean found = false;
 
-        for (Purchase purchase : purchases) {
-            if (purchase.getItemId().equals(itemId) && purchase.isActive()) {
-                // Deactivate purchase
-                plugin.getStorageManager().deactivatePurchase(purchase.getId());
+            for (Purchase purchase : purchases) {
+                if (purchase.getItemId().equals(itemId) && purchase.isActive()) {
+                    // Deactivate purchase
+                    plugin.getStorageManager().deactivatePurchaseAsync(purchase.getId());
 
-                // Revoke permission if applicable
-                if (plugin.getConfigManager().getShopItem(itemId).getPermission() != null) {
-                    plugin.getPermissionManager().revokePermission(target, plugin.getConfigManager().getShopItem(itemId).getPermission());
-                }
+                    // Revoke permission if applicable
+                    if (item.getPermission() != null) {
+                        plugin.getPermissionManager().revokePermission(target, item.getPermission());
+                    }
 
-                found = true;
-                break;
+                    found = true;
+                    break;
+                }
             }
-        }
 
-        if (found) {
-            sender.sendMessage("§aRevoked " + itemId + " from " + target.getName() + " successfully.");
-        } else {
-            sender.sendMessage("§cPlayer does not have an active purchase of " + itemId + ".");
-        }
+            if (found) {
+                sender.sendMessage("§aRevoked " + itemId + " from " + target.getName() + " successfully.");
+            } else {
+                sender.sendMessage("§cPlayer does not have an active purchase of " + itemId + ".");
+            }
+        }, plugin.getMainThreadExecutor());
     }
 
     /**
@@ -213,8 +260,20 @@ public class PermShopAdminCommand implements CommandExecutor {
 
         UUID playerUuid = target.getUniqueId();
 
-        // Get purchases
-        List<Purchase> purchases = plugin.getStorageManager().getPlayerPurchases(playerUuid);
+        // Get purchases off the main thread
+        plugin.getStorageManager().getPlayerPurchasesAsync(playerUuid).thenAcceptAsync(
+                purchases -> sendPurchaseList(sender, target, purchases), plugin.getMainThreadExecutor());
+    }
+
+    /**
+     * Sends a player's purchases and timed permissions
+     *
+     * @param sender Command sender
+     * @param target Player whose purchases are listed
+     * @param purchases Player's purchases
+     */
+    private void sendPurchaseList(CommandSender sender, Player target, List<Purchase> purchases) {
+        UUID playerUuid = target.getUniqueId();
 
         // List purchases
         sender.sendMessage("§a§lPurchases for " + target.getName() + ":");
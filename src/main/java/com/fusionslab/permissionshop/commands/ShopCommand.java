@@ -1,14 +1,14 @@
 package com.fusionslab.permissionshop.commands;
 
 import com.fusionslab.permissionshop.PermissionsShop;
-import com.fusionslab.permissionshop.models.ShopItem;
-import com.fusionslab.permissionshop.utils.TimeUtils;
+import com.fusionslab.permissionshop.config.ShopCatalog;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Command for viewing the permissions shop
@@ -16,9 +16,11 @@ import java.util.List;
 public class ShopCommand implements CommandExecutor {
 
     private final PermissionsShop plugin;
+    private final ShopPageCache pageCache;
 
     public ShopCommand(PermissionsShop plugin) {
         this.plugin = plugin;
+        this.pageCache = new ShopPageCache(plugin);
     }
 
     @Override
@@ -36,63 +38,54 @@ public class ShopCommand implements CommandExecutor {
             return true;
         }
 
+        int page = 1;
+        String category = "";
+
+        // Arguments are a page number and a category, in either order
+        for (String arg : args) {
+            try {
+                page = Integer.parseInt(arg);
+            } catch (NumberFormatException e) {
+                category = arg.toLowerCase(Locale.ROOT);
+            }
+        }
+
         // Show shop
-        showShop(player);
+        showShop(player, page, category);
 
         return true;
     }
 
     /**
-     * Shows the permissions shop to a player
+     * Shows a page of the permissions shop to a player
      *
      * @param player Player to show shop to
+     * @param page Page number, starting at 1
+     * @param category Lowercase category or empty for the whole shop
      */
-    private void showShop(Player player) {
-        List<ShopItem> items = plugin.getConfigManager().getDisplayableShopItems();
+    private void showShop(Player player, int page, String category) {
+        ShopCatalog catalog = plugin.getConfigManager().getCatalog();
 
-        if (items.isEmpty()) {
-            plugin.getMessages().sendPrefixedMessage(player, "shop.empty");
+        if (!category.isEmpty() && !catalog.getCategories().contains(category)) {
+            plugin.getMessages().sendPrefixedMessage(player, "shop.unknown_category",
+                    "category", category,
+                    "categories", String.join(", ", catalog.getCategories())
+            );
             return;
         }
 
-        // Send header
-        plugin.getMessages().sendMessage(player, "shop.header");
-
-        // Send items
-        for (ShopItem item : items) {
-            String duration = "";
-            String uses = "";
-
-            switch (item.getType()) {
-                case TIMED_PERMISSION:
-                    duration = TimeUtils.formatTime(item.getDuration());
-                    break;
-                case LIMITED_COMMAND:
-                    uses = String.valueOf(item.getUses());
-                    break;
-                case PERMANENT_PERMISSION:
-                    duration = "Permanent";
-                    break;
-                case ONE_TIME_COMMAND:
-                    uses = "1";
-                    break;
-                case HOME_SLOT:
-                    uses = "+" + item.getUses() + " slots";
-                    break;
-            }
+        List<ShopPageCache.ShopPage> pages = pageCache.getPages(category);
 
-            plugin.getMessages().sendMessage(player, "shop.item",
-                    "id", item.getId(),
-                    "name", item.getName(),
-                    "description", item.getDescription(),
-                    "price", plugin.getEconomyManager().format(item.getPrice()),
-                    "duration", duration,
-                    "uses", uses,
-                    "type", item.getType().toString()
-            );
+        if (pages.isEmpty()) {
+            plugin.getMessages().sendPrefixedMessage(player, "shop.empty");
+            return;
+        }
+
+        if (page < 1 || page > pages.size()) {
+            plugin.getMessages().sendPrefixedMessage(player, "shop.invalid_page", "pages", pages.size());
+            return;
         }
 
-        // Send footer
-        plugin.getMessages().sendMessage(player, "shop.footer");
+        pageCache.send(player, pages.get(page - 1));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,283 @@
+package com.fusionslab.permissionshop.commands;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.config.MessageTemplate;
+import com.fusionslab.permissionshop.config.Messages;
+import com.fusionslab.permissionshop.config.ShopCatalog;
+import com.fusionslab.permissionshop.economy.EconomyManager;
+import com.fusionslab.permissionshop.models.ShopItem;
+import com.fusionslab.permissionshop.utils.TimeUtils;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shop pages built once per catalog and messages version.
+ * Item lines and navigation are kept as finished components, only the header,
+ * which may show the player's name and balance, is rendered when a page is sent.
+ * Pages are built and sent on the main thread.
+ */
+public class ShopPageCache {
+
+    private static final LegacyComponentSerializer SERIALIZER = LegacyComponentSerializer.legacySection();
+    private static final String UNKNOWN_BALANCE = "?";
+
+    private final PermissionsShop plugin;
+    private final Map<String, List<ShopPage>> pagesByCategory = new HashMap<>();
+    private ShopCatalog catalog;
+    private int messagesVersion;
+    private int pageSize;
+
+    public ShopPageCache(PermissionsShop plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Gets the pages of a category, building them if the shop or messages changed
+     *
+     * @param category Lowercase category or empty for the whole shop
+     * @return Unmodifiable list of pages, empty if there is nothing to display
+     */
+    public List<ShopPage> getPages(String category) {
+        ShopCatalog currentCatalog = plugin.getConfigManager().getCatalog();
+        int currentVersion = plugin.getMessages().getVersion();
+        int currentPageSize = Math.max(1, plugin.getConfigManager().getConfig().getInt("shop.page_size", 8));
+
+        if (currentCatalog != catalog || currentVersion != messagesVersion || currentPageSize != pageSize) {
+            pagesByCategory.clear();
+            catalog = currentCatalog;
+            messagesVersion = currentVersion;
+            pageSize = currentPageSize;
+        }
+
+        List<ShopPage> pages = pagesByCategory.get(category);
+        if (pages != null) {
+            return pages;
+        }
+
+        List<ShopItem> items = category.isEmpty() ? catalog.getDisplayableItems() : catalog.getDisplayableItems(category);
+        if (items.isEmpty()) {
+            // Not cached, so unknown categories can't grow the cache
+            return Collections.emptyList();
+        }
+
+        pages = buildPages(items, category);
+        pagesByCategory.put(category, pages);
+        return pages;
+    }
+
+    /**
+     * Sends a page to a player, filling in the player's name and balance.
+     * The balance is looked up off the main thread and only if the header shows it.
+     *
+     * @param player Player to send the page to
+     * @param page Page to send
+     */
+    public void send(Player player, ShopPage page) {
+        if (!page.header.hasPlaceholder("balance")) {
+            send(player, page, "");
+            return;
+        }
+
+        EconomyManager economy = plugin.getEconomyManager();
+        if (economy.isDegraded()) {
+            send(player, page, UNKNOWN_BALANCE);
+            return;
+        }
+
+        economy.getBalanceAsync(player).handleAsync((balance, e) -> {
+            if (player.isOnline()) {
+                send(player, page, e == null ? economy.format(balance) : UNKNOWN_BALANCE);
+            }
+            return null;
+        }, plugin.getMainThreadExecutor());
+    }
+
+    /**
+     * Sends a page with its header rendered for the player
+     *
+     * @param player Player to send the page to
+     * @param page Page to send
+     * @param balance Formatted balance of the player
+     */
+    private void send(Player player, ShopPage page, String balance) {
+        Component message = page.body;
+
+        if (!page.header.isEmpty()) {
+            String header = page.header.render(
+                    "page", page.number,
+                    "pages", page.pageCount,
+                    "category", page.categoryName,
+                    "player", player.getName(),
+                    "balance", balance
+            );
+
+            message = Component.text()
+                    .append(SERIALIZER.deserialize(header))
+                    .append(Component.newline())
+                    .append(page.body)
+                    .build();
+        }
+
+        player.sendMessage(message);
+    }
+
+    /**
+     * Builds the pages for a list of items
+     *
+     * @param items Displayable items
+     * @param category Lowercase category or empty for the whole shop
+     * @return Unmodifiable list of pages
+     */
+    private List<ShopPage> buildPages(List<ShopItem> items, String category) {
+        Messages messages = plugin.getMessages();
+        int pageCount = (items.size() + pageSize - 1) / pageSize;
+        String categoryName = category.isEmpty() ? "all" : category;
+        String footer = messages.getMessage("shop.footer");
+
+        // Shared by all pages and rendered once all placeholders are known, on send
+        MessageTemplate header = messages.getTemplate("shop.header");
+        if (header == null) {
+            header = MessageTemplate.compile(messages.getMessage("shop.header"));
+        }
+
+        List<ShopPage> pages = new ArrayList<>(pageCount);
+
+        for (int page = 1; page <= pageCount; page++) {
+            List<Component> lines = new ArrayList<>();
+
+            int end = Math.min(items.size(), page * pageSize);
+            for (ShopItem item : items.subList((page - 1) * pageSize, end)) {
+                lines.add(buildItem(item));
+            }
+
+            if (pageCount > 1) {
+                lines.add(buildNavigation(page, pageCount, category));
+            }
+
+            if (!footer.isEmpty()) {
+                lines.add(SERIALIZER.deserialize(footer));
+            }
+
+            pages.add(new ShopPage(header, page, pageCount, categoryName, Component.join(JoinConfiguration.newlines(), lines)));
+        }
+
+        return Collections.unmodifiableList(pages);
+    }
+
+    /**
+     * Builds the line of an item, clicking it suggests the buy command
+     *
+     * @param item Shop item
+     * @return Item component
+     */
+    private Component buildItem(ShopItem item) {
+        String duration = "";
+        String uses = "";
+
+        switch (item.getType()) {
+            case TIMED_PERMISSION:
+                duration = TimeUtils.formatTime(item.getDuration());
+                break;
+            case LIMITED_COMMAND:
+                uses = String.valueOf(item.getUses());
+                break;
+            case PERMANENT_PERMISSION:
+                duration = "Permanent";
+                break;
+            case ONE_TIME_COMMAND:
+                uses = "1";
+                break;
+            case HOME_SLOT:
+                uses = "+" + item.getUses() + " slots";
+                break;
+        }
+
+        Messages messages = plugin.getMessages();
+        String price = plugin.getEconomyManager().format(item.getPrice());
+
+        String line = messages.getMessage("shop.item",
+                "id", item.getId(),
+                "name", item.getName(),
+                "description", item.getDescription(),
+                "price", price,
+                "duration", duration,
+                "uses", uses,
+                "type", item.getType().toString()
+        );
+        String hover = messages.getMessage("shop.item_hover",
+                "id", item.getId(),
+                "name", item.getName(),
+                "price", price
+        );
+
+        return SERIALIZER.deserialize(line)
+                .clickEvent(ClickEvent.suggestCommand("/psbuy " + item.getId()))
+                .hoverEvent(HoverEvent.showText(SERIALIZER.deserialize(hover)));
+    }
+
+    /**
+     * Builds the navigation line with clickable previous and next buttons
+     *
+     * @param page Page number, starting at 1
+     * @param pageCount Number of pages
+     * @param category Lowercase category or empty for the whole shop
+     * @return Navigation component
+     */
+    private Component buildNavigation(int page, int pageCount, String category) {
+        Messages messages = plugin.getMessages();
+        String suffix = category.isEmpty() ? "" : " " + category;
+        Component space = Component.text(" ");
+
+        Component navigation = Component.empty();
+
+        if (page > 1) {
+            navigation = navigation
+                    .append(SERIALIZER.deserialize(messages.getMessage("shop.previous_page"))
+                            .clickEvent(ClickEvent.runCommand("/permshop " + (page - 1) + suffix)))
+                    .append(space);
+        }
+
+        navigation = navigation.append(SERIALIZER.deserialize(messages.getMessage("shop.page",
+                "page", page,
+                "pages", pageCount
+        )));
+
+        if (page < pageCount) {
+            navigation = navigation
+                    .append(space)
+                    .append(SERIALIZER.deserialize(messages.getMessage("shop.next_page"))
+                            .clickEvent(ClickEvent.runCommand("/permshop " + (page + 1) + suffix)));
+        }
+
+        return navigation;
+    }
+
+    /**
+     * Page of the shop
+     */
+    public static final class ShopPage {
+        private final MessageTemplate header;
+        private final int number;
+        private final int pageCount;
+        private final String categoryName;
+        private final Component body;
+
+        private ShopPage(MessageTemplate header, int number, int pageCount, String categoryName, Component body) {
+            this.header = header;
+            this.number = number;
+            this.pageCount = pageCount;
+            this.categoryName = categoryName;
+            this.body = body;
+        }
+    }
+}
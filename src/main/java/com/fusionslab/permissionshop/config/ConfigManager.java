@@ -4,15 +4,26 @@ import com.fusionslab.permissionshop.PermissionsShop;
 import com.fusionslab.permissionshop.models.PurchaseType;
 import com.fusionslab.permissionshop.models.ShopItem;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 
 /**
@@ -20,13 +31,24 @@ import java.util.logging.Level;
  */
 public class ConfigManager {
 
+    private static final Set<String> CONFIG_FILES = Set.of("config.yml", "shop.yml", "messages.yml");
+
     private final PermissionsShop plugin;
-    private FileConfiguration config;
-    private FileConfiguration shopConfig;
-    private final Map<String, ShopItem> shopItems = new HashMap<>();
+    private final ExecutorService reloadExecutor;
+    private final ShopShardLoader shardLoader;
+    private volatile FileConfiguration config;
+    private volatile FileConfiguration shopConfig;
+    private volatile ShopCatalog catalog = ShopCatalog.EMPTY;
+    private ConfigWatcher watcher;
 
     public ConfigManager(PermissionsShop plugin) {
         this.plugin = plugin;
+        this.shardLoader = new ShopShardLoader(plugin, this, new File(plugin.getDataFolder(), "shop.d"));
+        this.reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PermissionsShop-ConfigReload");
+            thread.setDaemon(true);
+            return thread;
+        });
         loadConfig();
         loadShopConfig();
     }
@@ -36,42 +58,238 @@ public class ConfigManager {
      */
     public void loadConfig() {
         plugin.saveDefaultConfig();
-        plugin.reloadConfig();
-        config = plugin.getConfig();
+
+        FileConfiguration loaded = YamlConfiguration.loadConfiguration(getConfigFile());
+        applyBundledDefaults(loaded, "config.yml");
+        config = loaded;
     }
 
     /**
      * Loads the shop configuration file
      */
     public void loadShopConfig() {
-        File shopFile = new File(plugin.getDataFolder(), "shop.yml");
+        if (config.getBoolean("shop.sharded", false)) {
+            List<String> errors = new ArrayList<>();
+            shopConfig = null;
+            catalog = shardLoader.load(errors);
 
-        if (!shopFile.exists()) {
-            plugin.saveResource("shop.yml", false);
+            for (String error : errors) {
+                plugin.getLogger().warning("Skipped invalid shop file " + error);
+            }
+        } else {
+            shopConfig = YamlConfiguration.loadConfiguration(getShopFile());
+            catalog = new ShopCatalog(parseShopItems(shopConfig, "shop.yml", "").values());
         }
 
-        shopConfig = YamlConfiguration.loadConfiguration(shopFile);
-        loadShopItems();
+        plugin.getLogger().info("Loaded " + catalog.size() + " shop items.");
+    }
+
+    /**
+     * Parses and validates all configuration files off the main thread,
+     * then swaps them in on the main thread. Nothing changes if any file is invalid.
+     *
+     * @return Future completed on the main thread with whether the reload was applied
+     */
+    public CompletableFuture<Boolean> reloadConfigsAsync() {
+        return CompletableFuture.supplyAsync(this::parseConfigs, reloadExecutor)
+                .thenApplyAsync(this::applyConfigs, plugin.getMainThreadExecutor())
+                .exceptionally(e -> {
+                    plugin.getLogger().log(Level.SEVERE, "Could not reload configuration", e);
+                    return false;
+                });
     }
 
     /**
-     * Reloads all configuration files
+     * Starts watching the configuration files if enabled in config.yml
      */
-    public void reloadConfigs() {
-        loadConfig();
-        loadShopConfig();
+    public void startWatcher() {
+        if (watcher != null || !config.getBoolean("reload.watch_files", false)) {
+            return;
+        }
+
+        long debounce = Math.max(0, config.getLong("reload.debounce", 500));
+        File dataFolder = plugin.getDataFolder();
+        File shardDirectory = shardLoader.getDirectory();
+
+        // Watch the main files and, for a sharded shop, every file in shop.d
+        Predicate<Path> filter = path -> {
+            File file = path.toFile();
+            return file.getParentFile().equals(dataFolder) ? CONFIG_FILES.contains(file.getName())
+                    : file.getParentFile().equals(shardDirectory) && file.getName().endsWith(".yml");
+        };
+
+        Runnable reload = () -> reloadConfigsAsync().thenAccept(applied -> {
+            if (applied) {
+                plugin.getLogger().info("Reloaded configuration after a file change.");
+            }
+        });
+
+        watcher = new ConfigWatcher(plugin, List.of(dataFolder, shardDirectory), filter, debounce, reload);
+
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not watch configuration files for changes", e);
+            watcher = null;
+        }
     }
 
     /**
-     * Loads shop items from shop.yml
+     * Stops the file watcher and the reload thread
      */
-    private void loadShopItems() {
-        shopItems.clear();
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Parses all configuration files. Runs on the reload thread.
+     *
+     * @return Parsed configuration
+     */
+    private ParsedConfigs parseConfigs() {
+        ParsedConfigs parsed = new ParsedConfigs();
+
+        parsed.mainConfig = parseFile(getConfigFile(), parsed.errors);
+        if (parsed.mainConfig != null) {
+            applyBundledDefaults(parsed.mainConfig, "config.yml");
+
+            String storageType = parsed.mainConfig.getString("storage.type", "sqlite").toLowerCase();
+            if (!storageType.equals("sqlite") && !storageType.equals("mysql")) {
+                parsed.errors.add("config.yml: unknown storage type " + storageType);
+            }
+        }
+
+        boolean sharded = (parsed.mainConfig != null ? parsed.mainConfig : config).getBoolean("shop.sharded", false);
+        if (sharded) {
+            // Only shop files that changed since the last load are parsed again
+            parsed.catalog = shardLoader.load(parsed.errors);
+        } else {
+            parsed.shopConfig = parseFile(getShopFile(), parsed.errors);
+            if (parsed.shopConfig != null) {
+                parsed.catalog = new ShopCatalog(parseShopItems(parsed.shopConfig, "shop.yml", "").values());
+            }
+        }
+
+        parsed.messagesConfig = parseFile(plugin.getMessages().getMessagesFile(), parsed.errors);
+        if (parsed.messagesConfig != null) {
+            // Messages added in an update are missing from an older messages.yml
+            applyBundledDefaults(parsed.messagesConfig, "messages.yml");
+            parsed.messages = Messages.compileMessages(parsed.messagesConfig);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Swaps in parsed configuration. Runs on the main thread.
+     *
+     * @param parsed Parsed configuration
+     * @return Whether the configuration was applied
+     */
+    private boolean applyConfigs(ParsedConfigs parsed) {
+        if (!parsed.errors.isEmpty()) {
+            for (String error : parsed.errors) {
+                plugin.getLogger().severe("Reload aborted, " + error);
+            }
+            return false;
+        }
+
+        // Also what plugin.getConfig() returns from now on
+        config = parsed.mainConfig;
+
+        shopConfig = parsed.shopConfig;
+        catalog = parsed.catalog;
+        plugin.getMessages().setMessages(parsed.messagesConfig, parsed.messages);
+
+        if (plugin.getUsageManager() != null) {
+            plugin.getUsageManager().rebuildCommandIndex();
+        }
+
+        plugin.getLogger().info("Loaded " + catalog.size() + " shop items.");
+        return true;
+    }
+
+    /**
+     * Parses a YAML file, recording any syntax error
+     *
+     * @param file File to parse
+     * @param errors List to add errors to
+     * @return Parsed file or null if it's invalid
+     */
+    private FileConfiguration parseFile(File file, List<String> errors) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        try {
+            yaml.load(file);
+            return yaml;
+        } catch (IOException | InvalidConfigurationException e) {
+            errors.add(file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets the copy of a file bundled with the plugin as the defaults of a loaded file,
+     * so settings added in an update apply to a file written by an older version
+     *
+     * @param loaded Loaded file
+     * @param fileName Name of the bundled file
+     */
+    void applyBundledDefaults(FileConfiguration loaded, String fileName) {
+        InputStream resource = plugin.getResource(fileName);
+        if (resource == null) {
+            return;
+        }
+
+        try (Reader reader = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
+            loaded.setDefaults(YamlConfiguration.loadConfiguration(reader));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read the bundled " + fileName, e);
+        }
+    }
+
+    /**
+     * Gets the main configuration file
+     *
+     * @return Configuration file
+     */
+    private File getConfigFile() {
+        return new File(plugin.getDataFolder(), "config.yml");
+    }
+
+    /**
+     * Gets the shop file, creating it from the defaults if missing
+     *
+     * @return Shop file
+     */
+    private File getShopFile() {
+        File shopFile = new File(plugin.getDataFolder(), "shop.yml");
+
+        if (!shopFile.exists()) {
+            plugin.saveResource("shop.yml", false);
+        }
+
+        return shopFile;
+    }
+
+    /**
+     * Parses shop items from a shop configuration, skipping invalid items
+     *
+     * @param shopConfig Shop configuration
+     * @param fileName Name of the file for warnings
+     * @param defaultCategory Category of items that don't set one
+     * @return Valid items in configuration order
+     */
+    Map<String, ShopItem> parseShopItems(ConfigurationSection shopConfig, String fileName, String defaultCategory) {
+        Map<String, ShopItem> shopItems = new LinkedHashMap<>();
 
         ConfigurationSection itemsSection = shopConfig.getConfigurationSection("items");
         if (itemsSection == null) {
-            plugin.getLogger().warning("No items found in shop.yml!");
-            return;
+            plugin.getLogger().warning("No items found in " + fileName + "!");
+            return shopItems;
         }
 
         for (String itemId : itemsSection.getKeys(false)) {
@@ -91,11 +309,17 @@ public class ConfigManager {
                 continue;
             }
 
+            if (price < 0) {
+                plugin.getLogger().warning("Invalid price for item " + itemId + ": " + price);
+                continue;
+            }
+
             int duration = itemSection.getInt("duration", 0);
             int uses = itemSection.getInt("uses", 0);
             String permission = itemSection.getString("permission", "");
             String command = itemSection.getString("command", "");
             boolean displayInShop = itemSection.getBoolean("display_in_shop", true);
+            String category = itemSection.getString("category", defaultCategory);
 
             ShopItem shopItem = new ShopItem(
                     itemId,
@@ -107,13 +331,23 @@ public class ConfigManager {
                     uses,
                     permission,
                     command,
-                    displayInShop
+                    displayInShop,
+                    category
             );
 
             shopItems.put(itemId, shopItem);
         }
 
-        plugin.getLogger().info("Loaded " + shopItems.size() + " shop items.");
+        return shopItems;
+    }
+
+    /**
+     * Gets the current shop catalog
+     *
+     * @return Immutable shop catalog
+     */
+    public ShopCatalog getCatalog() {
+        return catalog;
     }
 
     /**
@@ -123,31 +357,25 @@ public class ConfigManager {
      * @return ShopItem or null if not found
      */
     public ShopItem getShopItem(String id) {
-        return shopItems.get(id);
+        return catalog.getItem(id);
     }
 
     /**
      * Gets all shop items
      *
-     * @return Map of shop items
+     * @return Unmodifiable map of shop items
      */
     public Map<String, ShopItem> getShopItems() {
-        return new HashMap<>(shopItems);
+        return catalog.getItems();
     }
 
     /**
      * Gets all shop items that should be displayed in the shop
      *
-     * @return List of displayable shop items
+     * @return Unmodifiable list of displayable shop items
      */
     public List<ShopItem> getDisplayableShopItems() {
-        List<ShopItem> items = new ArrayList<>();
-        for (ShopItem item : shopItems.values()) {
-            if (item.isDisplayInShop()) {
-                items.add(item);
-            }
-        }
-        return items;
+        return catalog.getDisplayableItems();
     }
 
     /**
@@ -162,7 +390,7 @@ public class ConfigManager {
     /**
      * Gets the shop configuration
      *
-     * @return FileConfiguration
+     * @return FileConfiguration or null if items are loaded from shop.d
      */
     public FileConfiguration getShopConfig() {
         return shopConfig;
@@ -172,6 +400,10 @@ public class ConfigManager {
      * Saves the shop configuration
      */
     public void saveShopConfig() {
+        if (shopConfig == null) {
+            return;
+        }
+
         File shopFile = new File(plugin.getDataFolder(), "shop.yml");
         try {
             shopConfig.save(shopFile);
@@ -179,4 +411,16 @@ public class ConfigManager {
             plugin.getLogger().log(Level.SEVERE, "Could not save shop config to " + shopFile, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Configuration parsed on the reload thread
+     */
+    private static class ParsedConfigs {
+        private final List<String> errors = new ArrayList<>();
+        private FileConfiguration mainConfig;
+        private FileConfiguration shopConfig;
+        private ShopCatalog catalog = ShopCatalog.EMPTY;
+        private FileConfiguration messagesConfig;
+        private Map<String, MessageTemplate> messages;
+    }
+}
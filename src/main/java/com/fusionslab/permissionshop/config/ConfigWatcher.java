@@ -0,0 +1,118 @@
+package com.fusionslab.permissionshop.config;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Watches configuration files and runs a callback once they stop changing
+ */
+public class ConfigWatcher implements AutoCloseable {
+
+    private final PermissionsShop plugin;
+    private final List<File> directories;
+    private final Predicate<Path> filter;
+    private final long debounceMillis;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Creates a watcher for files in the given directories
+     *
+     * @param plugin Plugin instance
+     * @param directories Directories to watch, missing ones are skipped
+     * @param filter Filter for the paths of files that trigger the callback
+     * @param debounceMillis How long the files must stay unchanged before the callback runs
+     * @param onChange Callback, run on the watcher thread
+     */
+    public ConfigWatcher(PermissionsShop plugin, List<File> directories, Predicate<Path> filter,
+                         long debounceMillis, Runnable onChange) {
+        this.plugin = plugin;
+        this.directories = directories;
+        this.filter = filter;
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts watching
+     *
+     * @throws IOException if a directory can't be watched
+     */
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+
+        for (File directory : directories) {
+            if (directory.isDirectory()) {
+                directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+
+        thread = new Thread(this::run, "PermissionsShop-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        // Editors often write a file several times in a row, so wait until they're done
+        long lastChange = -1;
+
+        try {
+            while (true) {
+                WatchKey key;
+                if (lastChange == -1) {
+                    key = watchService.take();
+                } else {
+                    long remaining = lastChange + debounceMillis - System.currentTimeMillis();
+                    key = remaining > 0 ? watchService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (key != null) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path && filter.test(directory.resolve((Path) event.context()))) {
+                            lastChange = System.currentTimeMillis();
+                        }
+                    }
+                    key.reset();
+                } else if (lastChange != -1 && System.currentTimeMillis() - lastChange >= debounceMillis) {
+                    lastChange = -1;
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher was closed
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Configuration file watcher stopped", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not close configuration file watcher", e);
+        }
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.fusionslab.permissionshop.config;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Message compiled into literal segments and placeholder slots, with colours already translated.
+ * Rendering is a single pass into a builder sized for the message.
+ */
+public final class MessageTemplate {
+
+    private static final Pattern HEX_PATTERN = Pattern.compile("#[a-fA-F0-9]{6}");
+
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, String[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compiles a raw message from messages.yml
+     *
+     * @param raw Message with colour codes and {placeholders}
+     * @return Compiled template
+     */
+    public static MessageTemplate compile(String raw) {
+        String message = ChatColor.translateAlternateColorCodes('&', translateHexColorCodes(raw));
+
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int start = 0;
+
+        while (true) {
+            int open = message.indexOf('{', start);
+            int close = open == -1 ? -1 : message.indexOf('}', open + 1);
+            if (close == -1) {
+                break;
+            }
+
+            literals.add(message.substring(start, open));
+            placeholders.add(message.substring(open + 1, close));
+            start = close + 1;
+        }
+
+        literals.add(message.substring(start));
+        return new MessageTemplate(literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * Renders the message
+     *
+     * @param replacements Key-value pairs for placeholders
+     * @return Rendered message
+     */
+    public String render(Object... replacements) {
+        if (placeholders.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder builder = new StringBuilder(literalLength + placeholders.length * 16);
+
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(literals[i]);
+
+            Object value = findReplacement(placeholders[i], replacements);
+            if (value != null) {
+                builder.append(value);
+            } else {
+                // Placeholders without a replacement are left as they are
+                builder.append('{').append(placeholders[i]).append('}');
+            }
+        }
+
+        return builder.append(literals[placeholders.length]).toString();
+    }
+
+    /**
+     * Checks if the message has a placeholder
+     *
+     * @param name Placeholder name without braces
+     * @return Whether the placeholder appears in the message
+     */
+    public boolean hasPlaceholder(String name) {
+        for (String placeholder : placeholders) {
+            if (placeholder.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the message renders to nothing
+     *
+     * @return Whether the message is empty
+     */
+    public boolean isEmpty() {
+        return placeholders.length == 0 && literals[0].isEmpty();
+    }
+
+    private static Object findReplacement(String placeholder, Object[] replacements) {
+        if (replacements == null) {
+            return null;
+        }
+
+        for (int i = 0; i + 1 < replacements.length; i += 2) {
+            if (replacements[i] != null && replacements[i + 1] != null && placeholder.equals(replacements[i].toString())) {
+                return replacements[i + 1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Translates hex colour codes like #a1b2c3 into the legacy §x format
+     *
+     * @param message Message with potential hex codes
+     * @return Message with translated hex codes
+     */
+    private static String translateHexColorCodes(String message) {
+        Matcher matcher = HEX_PATTERN.matcher(message);
+        StringBuilder buffer = new StringBuilder();
+
+        while (matcher.find()) {
+            StringBuilder color = new StringBuilder("§x");
+            for (char c : matcher.group().substring(1).toCharArray()) {
+                color.append('§').append(c);
+            }
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement(color.toString()));
+        }
+
+        matcher.appendTail(buffer);
+        return buffer.toString();
+    }
+}
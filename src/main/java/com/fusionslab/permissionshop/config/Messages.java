@@ -1,16 +1,15 @@
 package com.fusionslab.permissionshop.config;
 
 import com.fusionslab.permissionshop.PermissionsShop;
-import org.bukkit.ChatColor;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * Manages plugin messages
@@ -18,9 +17,10 @@ import java.util.regex.Pattern;
 public class Messages {
 
     private final PermissionsShop plugin;
-    private FileConfiguration messagesConfig;
-    private final Map<String, String> messages = new HashMap<>();
-    private final Pattern hexPattern = Pattern.compile("#[a-fA-F0-9]{6}");
+    private volatile FileConfiguration messagesConfig;
+    private volatile Map<String, MessageTemplate> templates = Map.of();
+    private volatile String prefix = "";
+    private volatile int version;
 
     public Messages(PermissionsShop plugin) {
         this.plugin = plugin;
@@ -31,20 +31,72 @@ public class Messages {
      * Loads messages from messages.yml
      */
     public void loadMessages() {
+        FileConfiguration loaded = YamlConfiguration.loadConfiguration(getMessagesFile());
+        plugin.getConfigManager().applyBundledDefaults(loaded, "messages.yml");
+        setMessages(loaded, compileMessages(loaded));
+    }
+
+    /**
+     * Replaces all messages at once
+     *
+     * @param messagesConfig Messages configuration
+     * @param templates Messages compiled from it
+     */
+    public void setMessages(FileConfiguration messagesConfig, Map<String, MessageTemplate> templates) {
+        MessageTemplate prefixTemplate = templates.get("prefix");
+
+        this.messagesConfig = messagesConfig;
+        this.prefix = prefixTemplate != null ? prefixTemplate.render() : "Missing message: prefix";
+        this.templates = templates;
+        this.version++;
+    }
+
+    /**
+     * Gets the version of the loaded messages, which changes on every reload
+     *
+     * @return Messages version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the messages file, creating it from the defaults if missing
+     *
+     * @return Messages file
+     */
+    public File getMessagesFile() {
         File messagesFile = new File(plugin.getDataFolder(), "messages.yml");
 
         if (!messagesFile.exists()) {
             plugin.saveResource("messages.yml", false);
         }
 
-        messagesConfig = YamlConfiguration.loadConfiguration(messagesFile);
-        messages.clear();
+        return messagesFile;
+    }
+
+    /**
+     * Compiles all messages from a messages configuration, including messages
+     * only found in its defaults
+     *
+     * @param messagesConfig Messages configuration
+     * @return Immutable map of message keys to templates
+     */
+    public static Map<String, MessageTemplate> compileMessages(FileConfiguration messagesConfig) {
+        Map<String, MessageTemplate> templates = new HashMap<>();
+
+        Set<String> keys = new LinkedHashSet<>(messagesConfig.getKeys(true));
+        if (messagesConfig.getDefaults() != null) {
+            keys.addAll(messagesConfig.getDefaults().getKeys(true));
+        }
 
-        for (String key : messagesConfig.getKeys(true)) {
+        for (String key : keys) {
             if (messagesConfig.isString(key)) {
-                messages.put(key, messagesConfig.getString(key));
+                templates.put(key, MessageTemplate.compile(messagesConfig.getString(key)));
             }
         }
+
+        return Map.copyOf(templates);
     }
 
     /**
@@ -55,26 +107,36 @@ public class Messages {
      * @return Formatted message
      */
     public String getMessage(String key, Object... replacements) {
-        String message = messages.getOrDefault(key, "Missing message: " + key);
-
-        // Apply color codes
-        message = translateHexColorCodes(message);
-        message = ChatColor.translateAlternateColorCodes('&', message);
-
-        // Replace placeholders
-        if (replacements != null && replacements.length > 0) {
-            if (replacements.length % 2 != 0) {
-                plugin.getLogger().warning("Uneven number of replacement arguments for message: " + key);
-            } else {
-                for (int i = 0; i < replacements.length; i += 2) {
-                    if (replacements[i] != null && replacements[i + 1] != null) {
-                        message = message.replace("{" + replacements[i].toString() + "}", replacements[i + 1].toString());
-                    }
-                }
-            }
+        MessageTemplate template = templates.get(key);
+        if (template == null) {
+            return "Missing message: " + key;
+        }
+
+        if (replacements != null && replacements.length % 2 != 0) {
+            plugin.getLogger().warning("Uneven number of replacement arguments for message: " + key);
+            return template.render();
         }
 
-        return message;
+        return template.render(replacements);
+    }
+
+    /**
+     * Gets the compiled template of a message
+     *
+     * @param key Message key
+     * @return Template or null if the message doesn't exist
+     */
+    public MessageTemplate getTemplate(String key) {
+        return templates.get(key);
+    }
+
+    /**
+     * Gets the rendered plugin prefix
+     *
+     * @return Prefix
+     */
+    public String getPrefix() {
+        return prefix;
     }
 
     /**
@@ -99,29 +161,9 @@ public class Messages {
      * @param replacements Key-value pairs for placeholders
      */
     public void sendPrefixedMessage(Player player, String key, Object... replacements) {
-        String prefix = getMessage("prefix");
         String message = getMessage(key, replacements);
         if (!message.isEmpty()) {
             player.sendMessage(prefix + " " + message);
         }
     }
-
-    /**
-     * Translates hex color codes in a string
-     *
-     * @param message Message with potential hex codes
-     * @return Message with translated hex codes
-     */
-    private String translateHexColorCodes(String message) {
-        Matcher matcher = hexPattern.matcher(message);
-        StringBuffer buffer = new StringBuffer();
-
-        while (matcher.find()) {
-            String hex = matcher.group();
-            matcher.appendReplacement(buffer, ChatColor.valueOf(hex).toString());
-        }
-
-        matcher.appendTail(buffer);
-        return buffer.toString();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package com.fusionslab.permissionshop.config;
+
+import com.fusionslab.permissionshop.models.PurchaseType;
+import com.fusionslab.permissionshop.models.ShopItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the shop items with precomputed views.
+ * A reload builds a new catalog instead of changing this one, so readers always see a consistent shop.
+ */
+public final class ShopCatalog {
+
+    /**
+     * Catalog without any items
+     */
+    public static final ShopCatalog EMPTY = new ShopCatalog(Collections.emptyList());
+
+    private final Map<String, ShopItem> items;
+    private final List<ShopItem> displayableItems;
+    private final Map<String, List<ShopItem>> displayableItemsByCategory;
+    private final Map<PurchaseType, List<ShopItem>> itemsByType;
+    private final Map<String, List<ShopItem>> itemsByPermission;
+    private final Map<String, List<ShopItem>> itemsByCommand;
+
+    /**
+     * Creates a catalog of the given items, keeping their order
+     *
+     * @param items Shop items
+     */
+    public ShopCatalog(Collection<ShopItem> items) {
+        Map<String, ShopItem> byId = new LinkedHashMap<>();
+        List<ShopItem> displayable = new ArrayList<>();
+        Map<String, List<ShopItem>> displayableByCategory = new LinkedHashMap<>();
+        Map<PurchaseType, List<ShopItem>> byType = new EnumMap<>(PurchaseType.class);
+        Map<String, List<ShopItem>> byPermission = new HashMap<>();
+        Map<String, List<ShopItem>> byCommand = new HashMap<>();
+
+        for (ShopItem item : items) {
+            byId.put(item.getId(), item);
+
+            if (item.isDisplayInShop()) {
+                displayable.add(item);
+
+                if (!item.getCategory().isEmpty()) {
+                    displayableByCategory.computeIfAbsent(item.getCategory(), category -> new ArrayList<>()).add(item);
+                }
+            }
+
+            byType.computeIfAbsent(item.getType(), type -> new ArrayList<>()).add(item);
+
+            if (!item.getPermission().isEmpty()) {
+                byPermission.computeIfAbsent(item.getPermission(), permission -> new ArrayList<>()).add(item);
+            }
+
+            if (!item.getCommand().isEmpty()) {
+                byCommand.computeIfAbsent(normalizeCommand(item.getCommand()), command -> new ArrayList<>()).add(item);
+            }
+        }
+
+        this.items = Collections.unmodifiableMap(byId);
+        this.displayableItems = List.copyOf(displayable);
+        this.displayableItemsByCategory = Collections.unmodifiableMap(copyValues(displayableByCategory));
+        this.itemsByType = Collections.unmodifiableMap(copyValues(byType));
+        this.itemsByPermission = Map.copyOf(copyValues(byPermission));
+        this.itemsByCommand = Map.copyOf(copyValues(byCommand));
+    }
+
+    /**
+     * Gets a shop item by its ID
+     *
+     * @param id Item ID
+     * @return ShopItem or null if not found
+     */
+    public ShopItem getItem(String id) {
+        return items.get(id);
+    }
+
+    /**
+     * Gets all shop items in configuration order
+     *
+     * @return Unmodifiable map of item IDs to items
+     */
+    public Map<String, ShopItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets all shop items that should be displayed in the shop
+     *
+     * @return Unmodifiable list of displayable items
+     */
+    public List<ShopItem> getDisplayableItems() {
+        return displayableItems;
+    }
+
+    /**
+     * Gets the shop items of a category that should be displayed in the shop
+     *
+     * @param category Category, ignoring case
+     * @return Unmodifiable list of displayable items
+     */
+    public List<ShopItem> getDisplayableItems(String category) {
+        return displayableItemsByCategory.getOrDefault(category.toLowerCase(Locale.ROOT), Collections.emptyList());
+    }
+
+    /**
+     * Gets the categories that have displayable items
+     *
+     * @return Unmodifiable set of lowercase categories in configuration order
+     */
+    public Set<String> getCategories() {
+        return displayableItemsByCategory.keySet();
+    }
+
+    /**
+     * Gets the shop items of a purchase type
+     *
+     * @param type Purchase type
+     * @return Unmodifiable list of items
+     */
+    public List<ShopItem> getItemsByType(PurchaseType type) {
+        return itemsByType.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * Gets the shop items granting a permission
+     *
+     * @param permission Permission node
+     * @return Unmodifiable list of items
+     */
+    public List<ShopItem> getItemsByPermission(String permission) {
+        return itemsByPermission.getOrDefault(permission, Collections.emptyList());
+    }
+
+    /**
+     * Gets the shop items for a command
+     *
+     * @param command Command, with or without the leading slash
+     * @return Unmodifiable list of items
+     */
+    public List<ShopItem> getItemsByCommand(String command) {
+        return itemsByCommand.getOrDefault(normalizeCommand(command), Collections.emptyList());
+    }
+
+    /**
+     * Gets the number of items
+     *
+     * @return Number of items
+     */
+    public int size() {
+        return items.size();
+    }
+
+    private static <K> Map<K, List<ShopItem>> copyValues(Map<K, List<ShopItem>> map) {
+        map.replaceAll((key, value) -> List.copyOf(value));
+        return map;
+    }
+
+    private static String normalizeCommand(String command) {
+        String normalized = command.trim();
+        if (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        return normalized.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,162 @@
+package com.fusionslab.permissionshop.config;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.models.ShopItem;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Loads shop items from a directory of YAML files, one per category.
+ * Parsed files are cached, and a reload only parses files whose
+ * modification time, size and contents changed.
+ */
+public class ShopShardLoader {
+
+    private final PermissionsShop plugin;
+    private final ConfigManager configManager;
+    private final File directory;
+    private Map<String, Shard> shards = Collections.emptyMap();
+
+    /**
+     * Creates a loader for a shop directory
+     *
+     * @param plugin Plugin instance
+     * @param configManager Config manager used to parse items
+     * @param directory Shop directory
+     */
+    public ShopShardLoader(PermissionsShop plugin, ConfigManager configManager, File directory) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the shop directory, parsing only changed files.
+     * Files that fail to parse keep their previously loaded items.
+     *
+     * @param errors List to add parse errors to
+     * @return Catalog of all items in the directory
+     */
+    public synchronized ShopCatalog load(List<String> errors) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            errors.add(directory.getName() + ": could not create directory");
+            return ShopCatalog.EMPTY;
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+
+        Map<String, Shard> loaded = new LinkedHashMap<>();
+        int parsed = 0;
+
+        for (File file : files) {
+            String name = file.getName();
+            Shard cached = shards.get(name);
+            long lastModified = file.lastModified();
+            long size = file.length();
+
+            if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+                loaded.put(name, cached);
+                continue;
+            }
+
+            try {
+                byte[] contents = Files.readAllBytes(file.toPath());
+                long checksum = checksum(contents);
+
+                // Saved without changes, keep the parsed items
+                if (cached != null && cached.checksum == checksum) {
+                    loaded.put(name, new Shard(lastModified, size, checksum, cached.items));
+                    continue;
+                }
+
+                YamlConfiguration yaml = new YamlConfiguration();
+                yaml.loadFromString(new String(contents, StandardCharsets.UTF_8));
+
+                // Each file is its own category unless an item names another one
+                String fileName = directory.getName() + "/" + name;
+                String category = name.substring(0, name.length() - ".yml".length());
+                loaded.put(name, new Shard(lastModified, size, checksum,
+                        configManager.parseShopItems(yaml, fileName, category)));
+                parsed++;
+            } catch (IOException | InvalidConfigurationException e) {
+                errors.add(directory.getName() + "/" + name + ": " + e.getMessage());
+                if (cached != null) {
+                    loaded.put(name, cached);
+                }
+            }
+        }
+
+        shards = loaded;
+        plugin.getLogger().info("Parsed " + parsed + " of " + files.length + " shop files in " + directory.getName() + ".");
+
+        return merge(loaded);
+    }
+
+    /**
+     * Gets the shop directory
+     *
+     * @return Shop directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Merges the items of all files, in file name order
+     *
+     * @param loaded Loaded files
+     * @return Catalog of all items
+     */
+    private ShopCatalog merge(Map<String, Shard> loaded) {
+        Map<String, ShopItem> items = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Shard> entry : loaded.entrySet()) {
+            for (ShopItem item : entry.getValue().items.values()) {
+                if (items.putIfAbsent(item.getId(), item) != null) {
+                    plugin.getLogger().warning("Duplicate shop item " + item.getId() + " in " +
+                            directory.getName() + "/" + entry.getKey() + " was ignored");
+                }
+            }
+        }
+
+        return new ShopCatalog(items.values());
+    }
+
+    private static long checksum(byte[] contents) {
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+
+    /**
+     * Items parsed from one file
+     */
+    private static class Shard {
+        private final long lastModified;
+        private final long size;
+        private final long checksum;
+        private final Map<String, ShopItem> items;
+
+        private Shard(long lastModified, long size, long checksum, Map<String, ShopItem> items) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.checksum = checksum;
+            this.items = items;
+        }
+    }
+}
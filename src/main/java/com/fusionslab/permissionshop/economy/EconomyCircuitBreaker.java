@@ -0,0 +1,97 @@
+package com.fusionslab.permissionshop.economy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Pauses purchases while the economy provider is slow or failing.
+ * After enough slow, failed or timed out calls in a row the breaker opens. While it's open,
+ * one purchase per cooldown is let through to probe the provider, and a fast call closes it again.
+ */
+public class EconomyCircuitBreaker {
+
+    private final Logger logger;
+    private final long slowThresholdNanos;
+    private final int failureThreshold;
+    private final long cooldownMillis;
+    private int consecutiveFailures;
+    private boolean open;
+    private long nextProbe;
+
+    /**
+     * Creates a closed circuit breaker
+     *
+     * @param logger Logger for state changes
+     * @param slowThresholdMillis Latency above which a call counts as failed
+     * @param failureThreshold Number of failed calls in a row that opens the breaker
+     * @param cooldownMillis Time between probes while open
+     */
+    public EconomyCircuitBreaker(Logger logger, long slowThresholdMillis, int failureThreshold, long cooldownMillis) {
+        this.logger = logger;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    /**
+     * Checks if a purchase may call the economy provider
+     *
+     * @return Whether the call is allowed
+     */
+    public synchronized boolean allowRequest() {
+        if (!open) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= nextProbe) {
+            nextProbe = now + cooldownMillis;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a finished call
+     *
+     * @param nanos Time the call took
+     * @param failed Whether the call threw
+     */
+    public synchronized void record(long nanos, boolean failed) {
+        if (failed || nanos > slowThresholdNanos) {
+            recordFailure();
+            return;
+        }
+
+        consecutiveFailures = 0;
+        if (open) {
+            open = false;
+            logger.info("Economy provider is responding again, purchases are resumed.");
+        }
+    }
+
+    /**
+     * Records a call the caller stopped waiting for
+     */
+    public synchronized void recordTimeout() {
+        recordFailure();
+    }
+
+    /**
+     * Checks if purchases are currently paused
+     *
+     * @return Whether the breaker is open
+     */
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    private void recordFailure() {
+        consecutiveFailures++;
+        if (!open && consecutiveFailures >= failureThreshold) {
+            open = true;
+            nextProbe = System.currentTimeMillis() + cooldownMillis;
+            logger.warning("Economy provider is too slow or failing, purchases are paused.");
+        }
+    }
+}
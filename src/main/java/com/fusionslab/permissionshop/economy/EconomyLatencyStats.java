@@ -0,0 +1,114 @@
+package com.fusionslab.permissionshop.economy;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency statistics of calls to the economy provider.
+ * Keeps totals since startup and a window of recent samples for percentiles.
+ */
+public class EconomyLatencyStats {
+
+    private static final int WINDOW_SIZE = 256;
+
+    private final long[] window = new long[WINDOW_SIZE];
+    private int windowPosition;
+    private int windowCount;
+    private long calls;
+    private long failures;
+    private long timeouts;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Records a finished call
+     *
+     * @param nanos Time the call took
+     * @param failed Whether the call threw
+     */
+    public synchronized void record(long nanos, boolean failed) {
+        calls++;
+        if (failed) {
+            failures++;
+        }
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+
+        window[windowPosition] = nanos;
+        windowPosition = (windowPosition + 1) % WINDOW_SIZE;
+        windowCount = Math.min(windowCount + 1, WINDOW_SIZE);
+    }
+
+    /**
+     * Records a call the caller stopped waiting for
+     */
+    public synchronized void recordTimeout() {
+        timeouts++;
+    }
+
+    /**
+     * Gets the number of finished calls
+     *
+     * @return Number of calls
+     */
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Gets the number of calls that threw
+     *
+     * @return Number of failed calls
+     */
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Gets the number of calls that timed out
+     *
+     * @return Number of timeouts
+     */
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Gets the average latency since startup
+     *
+     * @return Average latency in milliseconds
+     */
+    public synchronized double getAverageMillis() {
+        return calls == 0 ? 0 : toMillis(totalNanos / (double) calls);
+    }
+
+    /**
+     * Gets the highest latency since startup
+     *
+     * @return Maximum latency in milliseconds
+     */
+    public synchronized double getMaxMillis() {
+        return toMillis(maxNanos);
+    }
+
+    /**
+     * Gets a latency percentile over the recent calls
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in milliseconds
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (windowCount == 0) {
+            return 0;
+        }
+
+        long[] samples = Arrays.copyOf(window, windowCount);
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile / 100 * windowCount) - 1;
+        return toMillis(samples[Math.max(0, Math.min(index, windowCount - 1))]);
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -4,19 +4,46 @@ import com.fusionslab.permissionshop.PermissionsShop;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.entity.Player;
 import org.bukkit.plugin.RegisteredServiceProvider;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
 /**
  * Manages economy operations using Vault
  */
 public class EconomyManager {
 
     private final PermissionsShop plugin;
+    private final ExecutorService executor;
+    private final EconomyLatencyStats stats = new EconomyLatencyStats();
+    private final EconomyCircuitBreaker circuitBreaker;
+    private final long timeoutMillis;
     private Economy economy;
 
     public EconomyManager(PermissionsShop plugin) {
         this.plugin = plugin;
+        this.timeoutMillis = Math.max(1, plugin.getConfig().getLong("economy.timeout", 2000));
+        this.circuitBreaker = new EconomyCircuitBreaker(
+                plugin.getLogger(),
+                plugin.getConfig().getLong("economy.slow_threshold", 250),
+                plugin.getConfig().getInt("economy.failure_threshold", 5),
+                plugin.getConfig().getLong("economy.cooldown", 30) * 1000L
+        );
+        // One thread keeps economy calls in order and off the main thread
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PermissionsShop-Economy");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -39,60 +66,149 @@ public class EconomyManager {
     }
 
     /**
-     * Checks if a player has enough money
+     * Checks if purchases may use the economy, which is not the case while the provider is too slow.
+     * While paused, this lets one purchase through now and then to check if the provider recovered.
      *
-     * @param player Player to check
-     * @param amount Amount to check
-     * @return Whether the player has enough money
+     * @return Whether a purchase may go ahead
      */
-    public boolean hasEnough(Player player, double amount) {
-        return economy.has(player, amount);
+    public boolean isAvailable() {
+        return circuitBreaker.allowRequest();
     }
 
     /**
-     * Withdraws money from a player
+     * Withdraws money from a player off the main thread.
+     * If the call times out but the withdrawal goes through later, the money is given back.
      *
      * @param player Player to withdraw from
      * @param amount Amount to withdraw
-     * @return Whether the withdrawal was successful
+     * @return Future with whether the withdrawal was successful, failing with a TimeoutException if the provider is too slow
      */
-    public boolean withdraw(Player player, double amount) {
-        if (!hasEnough(player, amount)) {
-            return false;
-        }
-
-        return economy.withdrawPlayer(player, amount).transactionSuccess();
+    public CompletableFuture<Boolean> withdrawAsync(OfflinePlayer player, double amount) {
+        return callAsync(() -> economy.has(player, amount) && economy.withdrawPlayer(player, amount).transactionSuccess(),
+                withdrawn -> {
+                    if (withdrawn) {
+                        plugin.getLogger().warning("Refunding " + format(amount) + " to " + player.getName()
+                                + ", the withdrawal went through after the purchase timed out.");
+                        depositAsync(player, amount);
+                    }
+                });
     }
 
     /**
-     * Deposits money to a player
+     * Deposits money to a player off the main thread
      *
      * @param player Player to deposit to
      * @param amount Amount to deposit
-     * @return Whether the deposit was successful
+     * @return Future with whether the deposit was successful, failing with a TimeoutException if the provider is too slow
      */
-    public boolean deposit(Player player, double amount) {
-        return economy.depositPlayer(player, amount).transactionSuccess();
+    public CompletableFuture<Boolean> depositAsync(OfflinePlayer player, double amount) {
+        return callAsync(() -> economy.depositPlayer(player, amount).transactionSuccess(), null);
     }
 
     /**
-     * Gets a player's balance
+     * Gets a player's balance off the main thread
      *
      * @param player Player to get balance of
-     * @return Player's balance
+     * @return Future with the player's balance, failing with a TimeoutException if the provider is too slow
      */
-    public double getBalance(Player player) {
-        return economy.getBalance(player);
+    public CompletableFuture<Double> getBalanceAsync(OfflinePlayer player) {
+        return callAsync(() -> economy.getBalance(player), null);
     }
 
     /**
-     * Gets a player's balance
+     * Runs a call to the economy provider on the economy thread, timing it
      *
-     * @param player Offline player to get balance of
-     * @return Player's balance
+     * @param call Call to run
+     * @param lateResult Handles a result that arrives after the caller timed out, or null to ignore it
+     * @param <T> Result type
+     * @return Future with the result, failing with a TimeoutException after the configured timeout
      */
-    public double getBalance(OfflinePlayer player) {
-        return economy.getBalance(player);
+    private <T> CompletableFuture<T> callAsync(Supplier<T> call, Consumer<T> lateResult) {
+        AtomicBoolean timedOut = new AtomicBoolean();
+
+        Supplier<T> measuredCall = () -> {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                T result = call.get();
+                failed = false;
+                return result;
+            } finally {
+                long nanos = System.nanoTime() - start;
+                stats.record(nanos, failed);
+                // A timed out call already counted against the provider
+                if (!timedOut.get()) {
+                    circuitBreaker.record(nanos, failed);
+                }
+            }
+        };
+
+        CompletableFuture<T> future = supply(measuredCall);
+
+        // Time spent queued behind slow calls counts towards the timeout too
+        CompletableFuture<T> timed = future.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        timed.whenComplete((result, e) -> {
+            if (e instanceof TimeoutException && timedOut.compareAndSet(false, true)) {
+                stats.recordTimeout();
+                circuitBreaker.recordTimeout();
+
+                if (lateResult != null) {
+                    future.thenAccept(lateResult).exceptionally(lateError -> {
+                        plugin.getLogger().log(Level.SEVERE, "Economy call failed after timing out", lateError);
+                        return null;
+                    });
+                }
+            }
+        });
+        return timed;
+    }
+
+    /**
+     * Runs an economy call on the economy thread
+     *
+     * @param call Call to run
+     * @param <T> Result type
+     * @return Future with the result
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, refunds of aborted purchases still have to go through
+            return CompletableFuture.supplyAsync(call, Runnable::run);
+        }
+    }
+
+    /**
+     * Gets the latency statistics of economy calls
+     *
+     * @return Latency statistics
+     */
+    public EconomyLatencyStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Checks if purchases are paused because the economy provider is too slow
+     *
+     * @return Whether purchases are paused
+     */
+    public boolean isDegraded() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * Finishes queued economy calls, such as refunds, and stops the economy thread
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for economy transactions to finish.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -0,0 +1,49 @@
+package com.fusionslab.permissionshop.listeners;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.event.node.NodeRemoveEvent;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.NodeType;
+
+import java.util.UUID;
+
+/**
+ * Handles LuckPerms removing timed permission nodes once their expiry passes
+ */
+public class LuckPermsExpiryListener {
+
+    private final PermissionsShop plugin;
+
+    public LuckPermsExpiryListener(PermissionsShop plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Subscribes to LuckPerms events. The subscription ends when the plugin is disabled.
+     *
+     * @param luckPerms LuckPerms API
+     */
+    public void register(LuckPerms luckPerms) {
+        luckPerms.getEventBus().subscribe(plugin, NodeRemoveEvent.class, this::onNodeRemove);
+    }
+
+    private void onNodeRemove(NodeRemoveEvent event) {
+        if (!event.isUser()) {
+            return;
+        }
+
+        Node node = event.getNode();
+        if (node.getType() != NodeType.PERMISSION || !node.hasExpiry()) {
+            return;
+        }
+
+        UUID playerUuid = ((User) event.getTarget()).getUniqueId();
+        String permission = node.getKey();
+
+        // LuckPerms posts events off the main thread
+        plugin.getMainThreadExecutor().execute(() ->
+                plugin.getPermissionManager().handleExpiredNode(playerUuid, permission));
+    }
+}
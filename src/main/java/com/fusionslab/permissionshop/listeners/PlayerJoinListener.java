@@ -21,13 +21,7 @@ public class PlayerJoinListener implements Listener {
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
 
-        // Schedule delayed task to load player data after all plugins have loaded
-        plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> {
-            // Load player's permissions
-            plugin.getPermissionManager().loadPlayerPermissions(player);
-
-            // Load player's purchases
-            plugin.getPurchaseManager().loadPlayerPurchases(player.getUniqueId());
-        }, 20L); // 1 second delay
+        // Apply player's purchases, usually already loaded during login, and reconcile their permissions
+        plugin.getPurchaseManager().loadPlayerPurchases(player.getUniqueId());
     }
 }
\ No newline at end of file
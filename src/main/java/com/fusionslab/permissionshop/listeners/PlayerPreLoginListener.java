@@ -0,0 +1,30 @@
+package com.fusionslab.permissionshop.listeners;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+
+/**
+ * Loads player data while players log in, off the main thread
+ */
+public class PlayerPreLoginListener implements Listener {
+
+    private final PermissionsShop plugin;
+
+    public PlayerPreLoginListener(PermissionsShop plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        // Other plugins have decided on the login by now
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.getPurchaseManager().discardPreloadedPurchases(event.getUniqueId());
+            return;
+        }
+
+        plugin.getPurchaseManager().preloadPlayerPurchases(event.getUniqueId());
+    }
+}
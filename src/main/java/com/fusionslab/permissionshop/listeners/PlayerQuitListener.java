@@ -24,7 +24,13 @@ public class PlayerQuitListener implements Listener {
         // Clean up player permissions
         plugin.getPermissionManager().cleanupPlayerPermissions(player.getUniqueId());
 
+        // Save the player's use counters
+        plugin.getUseCounterManager().flushPlayer(player.getUniqueId());
+
         // Clean up player purchases
         plugin.getUsageManager().cleanupPlayerPurchases(player.getUniqueId());
+
+        // Carts are not kept across sessions
+        plugin.getCartManager().clear(player.getUniqueId());
     }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.fusionslab.permissionshop.managers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the shopping carts of online players until they check out or leave
+ */
+public class CartManager {
+
+    private final Map<UUID, Map<String, Integer>> carts = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an item to a player's cart, on top of what is already in it
+     *
+     * @param playerUuid Player UUID
+     * @param itemId Item ID
+     * @param quantity Quantity to add
+     * @return Quantity of the item now in the cart
+     */
+    public int add(UUID playerUuid, String itemId, int quantity) {
+        Map<String, Integer> cart = carts.computeIfAbsent(playerUuid, uuid -> Collections.synchronizedMap(new LinkedHashMap<>()));
+        return cart.merge(itemId, quantity, Integer::sum);
+    }
+
+    /**
+     * Removes an item from a player's cart
+     *
+     * @param playerUuid Player UUID
+     * @param itemId Item ID
+     * @return Whether the item was in the cart
+     */
+    public boolean remove(UUID playerUuid, String itemId) {
+        Map<String, Integer> cart = carts.get(playerUuid);
+        return cart != null && cart.remove(itemId) != null;
+    }
+
+    /**
+     * Gets a copy of a player's cart
+     *
+     * @param playerUuid Player UUID
+     * @return Quantities keyed by item ID, in the order they were added
+     */
+    public Map<String, Integer> getCart(UUID playerUuid) {
+        Map<String, Integer> cart = carts.get(playerUuid);
+        if (cart == null) {
+            return Collections.emptyMap();
+        }
+
+        synchronized (cart) {
+            return new LinkedHashMap<>(cart);
+        }
+    }
+
+    /**
+     * Takes purchased quantities out of a player's cart. Items added while the purchase ran stay in it.
+     *
+     * @param playerUuid Player UUID
+     * @param purchased Quantities keyed by item ID, as they were checked out
+     */
+    public void removePurchased(UUID playerUuid, Map<String, Integer> purchased) {
+        Map<String, Integer> cart = carts.get(playerUuid);
+        if (cart == null) {
+            return;
+        }
+
+        synchronized (cart) {
+            purchased.forEach((itemId, quantity) ->
+                    cart.computeIfPresent(itemId, (id, inCart) -> inCart > quantity ? inCart - quantity : null));
+        }
+    }
+
+    /**
+     * Empties a player's cart
+     *
+     * @param playerUuid Player UUID
+     */
+    public void clear(UUID playerUuid) {
+        carts.remove(playerUuid);
+    }
+}
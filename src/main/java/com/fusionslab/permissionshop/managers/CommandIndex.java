@@ -0,0 +1,256 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.PurchaseType;
+import com.fusionslab.permissionshop.models.ShopItem;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable index from lowercase command labels, including Bukkit aliases,
+ * to the limited-command items that cover them.
+ * Labels are kept in an open-addressed table hashed case-insensitively, so a label
+ * can be looked up straight from the command message without allocating.
+ */
+public final class CommandIndex {
+
+    /**
+     * Index without any commands
+     */
+    public static final CommandIndex EMPTY = new CommandIndex(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Entry[] table;
+    private final int mask;
+    private final int size;
+    private final Map<String, String> commandKeysByItem;
+
+    private CommandIndex(Map<String, List<ShopItem>> itemsByLabel, Map<String, String> commandKeysByItem) {
+        this.commandKeysByItem = commandKeysByItem;
+
+        // Keep the table at most half full so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(1, itemsByLabel.size()) * 2 - 1) << 1;
+        this.table = new Entry[capacity];
+        this.mask = capacity - 1;
+        this.size = itemsByLabel.size();
+
+        for (Map.Entry<String, List<ShopItem>> entry : itemsByLabel.entrySet()) {
+            String label = entry.getKey();
+            int slot = hash(label, 0, label.length()) & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            List<ShopItem> items = entry.getValue();
+            table[slot] = new Entry(label, commandKeysByItem.get(items.get(0).getId()), items);
+        }
+    }
+
+    /**
+     * Builds an index for the given shop items
+     *
+     * @param items Shop items
+     * @param commandMap Server command map used to resolve aliases, or null to skip aliases
+     * @return Command index
+     */
+    public static CommandIndex build(Collection<ShopItem> items, CommandMap commandMap) {
+        Map<String, List<ShopItem>> itemsByLabel = new HashMap<>();
+        Map<String, String> commandKeysByItem = new HashMap<>();
+
+        for (ShopItem item : items) {
+            if (item.getType() != PurchaseType.LIMITED_COMMAND || item.getCommand().isEmpty()) {
+                continue;
+            }
+
+            String label = normalize(item.getCommand());
+            Command command = commandMap != null ? commandMap.getCommand(label) : null;
+
+            // Items for the same Bukkit command share uses, whichever alias they name
+            commandKeysByItem.put(item.getId(), command != null ? normalize(command.getName()) : label);
+
+            for (String alias : resolveLabels(label, command, commandMap)) {
+                List<ShopItem> labelItems = itemsByLabel.computeIfAbsent(alias, key -> new ArrayList<>());
+                if (!labelItems.contains(item)) {
+                    labelItems.add(item);
+                }
+            }
+        }
+
+        Map<String, List<ShopItem>> index = new HashMap<>();
+        for (Map.Entry<String, List<ShopItem>> entry : itemsByLabel.entrySet()) {
+            index.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        return new CommandIndex(index, Map.copyOf(commandKeysByItem));
+    }
+
+    /**
+     * Gets the items for a command label
+     *
+     * @param label Lowercase command label without the leading slash
+     * @return Items for the label or null if it's not a shop command
+     */
+    public List<ShopItem> getItems(String label) {
+        Entry entry = find(label, 0, label.length());
+        return entry != null ? entry.items : null;
+    }
+
+    /**
+     * Gets the key of the command an item covers.
+     * All labels of the same command share one key.
+     *
+     * @param itemId Item ID
+     * @return Command key or null if the item is not a limited command
+     */
+    public String getCommandKey(String itemId) {
+        return commandKeysByItem.get(itemId);
+    }
+
+    /**
+     * Finds the entry for the label of a command message, ignoring case.
+     * Does not allocate, so it is safe to call for every command on the server.
+     *
+     * @param message Command message as sent by the player, including the leading slash
+     * @return Entry for the label or null if it's not a shop command
+     */
+    public Entry findCommand(String message) {
+        if (size == 0 || message.length() < 2) {
+            return null;
+        }
+
+        int end = message.indexOf(' ', 1);
+        return find(message, 1, end == -1 ? message.length() : end);
+    }
+
+    /**
+     * Finds the entry for a label within a string, ignoring case
+     *
+     * @param text Text containing the label
+     * @param start Start index of the label
+     * @param end End index of the label (exclusive)
+     * @return Entry for the label or null if it's not indexed
+     */
+    public Entry find(String text, int start, int end) {
+        int length = end - start;
+        int slot = hash(text, start, end) & mask;
+
+        Entry entry;
+        while ((entry = table[slot]) != null) {
+            if (entry.label.length() == length && entry.label.regionMatches(true, 0, text, start, length)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the number of indexed labels
+     *
+     * @return Number of labels
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Hashes a region of a string as if it were lowercase
+     *
+     * @param text Text to hash
+     * @param start Start index
+     * @param end End index (exclusive)
+     * @return Case-insensitive hash
+     */
+    private static int hash(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        }
+        // Spread the bits since only the low ones pick the slot
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Gets a label and every other label registered for the same command
+     *
+     * @param label Command label
+     * @param command Command registered for the label or null
+     * @param commandMap Server command map or null
+     * @return Labels for the command
+     */
+    private static List<String> resolveLabels(String label, Command command, CommandMap commandMap) {
+        List<String> labels = new ArrayList<>();
+        labels.add(label);
+
+        if (command == null) {
+            return labels;
+        }
+
+        // Known commands include aliases and namespaced labels such as essentials:heal
+        for (Map.Entry<String, Command> entry : commandMap.getKnownCommands().entrySet()) {
+            if (entry.getValue() == command) {
+                String alias = normalize(entry.getKey());
+                if (!labels.contains(alias)) {
+                    labels.add(alias);
+                }
+            }
+        }
+
+        return labels;
+    }
+
+    /**
+     * Indexed command label and the items covering it
+     */
+    public static final class Entry {
+        private final String label;
+        private final String commandKey;
+        private final List<ShopItem> items;
+
+        private Entry(String label, String commandKey, List<ShopItem> items) {
+            this.label = label;
+            this.commandKey = commandKey;
+            this.items = items;
+        }
+
+        /**
+         * Gets the lowercase command label
+         *
+         * @return Command label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Gets the key of the command, shared by all of its labels
+         *
+         * @return Command key
+         */
+        public String getCommandKey() {
+            return commandKey;
+        }
+
+        /**
+         * Gets the items covering the command
+         *
+         * @return Immutable list of items
+         */
+        public List<ShopItem> getItems() {
+            return items;
+        }
+    }
+
+    private static String normalize(String command) {
+        String label = command.trim();
+        if (label.startsWith("/")) {
+            label = label.substring(1);
+        }
+        return label.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,73 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.TimedPermission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Min-heap of timed permissions ordered by expiration time.
+ * Checking for due expiries is a single volatile read when nothing has expired.
+ */
+public class ExpiryScheduler {
+
+    private final PriorityQueue<TimedPermission> queue =
+            new PriorityQueue<>(Comparator.comparingLong(TimedPermission::getExpirationTime));
+    private volatile long nextExpiration = Long.MAX_VALUE;
+
+    /**
+     * Schedules a timed permission for expiry
+     *
+     * @param timedPermission TimedPermission to schedule
+     */
+    public synchronized void schedule(TimedPermission timedPermission) {
+        queue.add(timedPermission);
+        nextExpiration = queue.peek().getExpirationTime();
+    }
+
+    /**
+     * Checks if any scheduled permission is due
+     *
+     * @param now Current timestamp
+     * @return Whether pollExpired would return anything
+     */
+    public boolean hasExpired(long now) {
+        return nextExpiration <= now;
+    }
+
+    /**
+     * Removes and returns all permissions that expired at or before the given time
+     *
+     * @param now Current timestamp
+     * @return Expired permissions, in expiration order
+     */
+    public List<TimedPermission> pollExpired(long now) {
+        if (!hasExpired(now)) {
+            return Collections.emptyList();
+        }
+
+        synchronized (this) {
+            List<TimedPermission> expired = new ArrayList<>();
+
+            while (!queue.isEmpty() && queue.peek().getExpirationTime() <= now) {
+                expired.add(queue.poll());
+            }
+
+            TimedPermission next = queue.peek();
+            nextExpiration = next != null ? next.getExpirationTime() : Long.MAX_VALUE;
+            return expired;
+        }
+    }
+
+    /**
+     * Gets the number of scheduled permissions, including ones that were replaced since
+     *
+     * @return Number of scheduled permissions
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+}
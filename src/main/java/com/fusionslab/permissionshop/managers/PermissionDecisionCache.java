@@ -0,0 +1,98 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.event.context.ContextUpdateEvent;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches permission checks for the shop's own permissions per player.
+ * With LuckPerms, entries are dropped whenever a user's data is recalculated or their contexts change.
+ * Without it, they are dropped when the shop changes a player's attachments.
+ * Entries are also dropped when the player's op status or world differs from when they were cached.
+ * Attachments other plugins add or remove are not noticed until one of these happens.
+ */
+public class PermissionDecisionCache {
+
+    private final PermissionsShop plugin;
+    private final Map<UUID, Decisions> decisions = new ConcurrentHashMap<>();
+
+    public PermissionDecisionCache(PermissionsShop plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Subscribes to LuckPerms data recalculation and context changes. The subscriptions end when the plugin is disabled.
+     *
+     * @param luckPerms LuckPerms API
+     */
+    public void register(LuckPerms luckPerms) {
+        luckPerms.getEventBus().subscribe(plugin, UserDataRecalculateEvent.class,
+                event -> invalidate(event.getUser().getUniqueId()));
+        // Contexts such as the world or gamemode select which nodes apply
+        luckPerms.getEventBus().subscribe(plugin, ContextUpdateEvent.class,
+                event -> event.getSubject(Player.class).ifPresent(player -> invalidate(player.getUniqueId())));
+    }
+
+    /**
+     * Checks if a player has a permission, using the cached decision if there is one
+     *
+     * @param player Player to check
+     * @param permission Permission to check
+     * @return Whether the player has the permission
+     */
+    public boolean hasPermission(Player player, String permission) {
+        boolean op = player.isOp();
+        UUID world = player.getWorld().getUID();
+
+        Decisions playerDecisions = decisions.get(player.getUniqueId());
+        if (playerDecisions == null || playerDecisions.op != op || !playerDecisions.world.equals(world)) {
+            // Op status has no event and per-world permissions change with the world
+            playerDecisions = new Decisions(op, world);
+            decisions.put(player.getUniqueId(), playerDecisions);
+        }
+
+        Boolean decision = playerDecisions.permissions.get(permission);
+        if (decision == null) {
+            decision = player.hasPermission(permission);
+            playerDecisions.permissions.put(permission, decision);
+        }
+
+        return decision;
+    }
+
+    /**
+     * Drops all cached decisions for a player
+     *
+     * @param playerUuid Player UUID
+     */
+    public void invalidate(UUID playerUuid) {
+        decisions.remove(playerUuid);
+    }
+
+    /**
+     * Drops all cached decisions
+     */
+    public void invalidateAll() {
+        decisions.clear();
+    }
+
+    /**
+     * Cached decisions of one player and the state they were made in
+     */
+    private static final class Decisions {
+        private final boolean op;
+        private final UUID world;
+        private final Map<String, Boolean> permissions = new ConcurrentHashMap<>();
+
+        private Decisions(boolean op, UUID world) {
+            this.op = op;
+            this.world = world;
+        }
+    }
+}
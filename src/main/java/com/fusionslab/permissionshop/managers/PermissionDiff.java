@@ -0,0 +1,100 @@
+package com.fusionslab.permissionshop.managers;
+
+import net.luckperms.api.node.types.PermissionNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Difference between the permission nodes a player has and the ones their purchases call for
+ */
+public class PermissionDiff {
+
+    private final Map<String, Long> missing = new HashMap<>();
+    private final Set<String> extra = new HashSet<>();
+
+    private PermissionDiff() {
+    }
+
+    /**
+     * Compares a player's permission nodes with their purchases
+     *
+     * @param nodes Permission nodes the player has, nodes with contexts are ignored
+     * @param expected Permissions the player should have, with their expiration time (0 for permanent)
+     * @param managed Permissions that are removed when the player has them without an active purchase
+     * @return Difference to write
+     */
+    public static PermissionDiff compute(Iterable<PermissionNode> nodes, Map<String, Long> expected, Set<String> managed) {
+        PermissionDiff diff = new PermissionDiff();
+
+        Map<String, PermissionNode> current = new HashMap<>();
+        for (PermissionNode node : nodes) {
+            // Nodes set for a server or world don't apply everywhere, purchases grant global ones
+            if (node.getValue() && !node.hasExpired() && node.getContexts().isEmpty()) {
+                current.merge(node.getPermission().toLowerCase(Locale.ROOT), node, PermissionDiff::longerLasting);
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            PermissionNode node = current.get(entry.getKey().toLowerCase(Locale.ROOT));
+            if (node == null || !lastsUntil(node, entry.getValue())) {
+                diff.missing.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (String permission : managed) {
+            PermissionNode node = current.get(permission.toLowerCase(Locale.ROOT));
+            if (!expected.containsKey(permission) && node != null) {
+                diff.extra.add(node.getPermission());
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Gets the permissions to grant
+     *
+     * @return Expiration times keyed by permission (0 for permanent)
+     */
+    public Map<String, Long> getMissing() {
+        return missing;
+    }
+
+    /**
+     * Gets the permissions to revoke, as they are named on the player's nodes
+     *
+     * @return Permissions to revoke
+     */
+    public Set<String> getExtra() {
+        return extra;
+    }
+
+    /**
+     * Checks if a node grants its permission at least until the given time
+     *
+     * @param node Permission node
+     * @param expirationTime Expiration time in milliseconds (0 for permanent)
+     * @return Whether the node lasts long enough
+     */
+    private static boolean lastsUntil(PermissionNode node, long expirationTime) {
+        if (!node.hasExpiry()) {
+            return true;
+        }
+        return expirationTime > 0
+                && node.getExpiry().toEpochMilli() + PermissionManager.NODE_EXPIRY_TOLERANCE_MILLIS >= expirationTime;
+    }
+
+    private static PermissionNode longerLasting(PermissionNode first, PermissionNode second) {
+        if (!first.hasExpiry()) {
+            return first;
+        }
+        if (!second.hasExpiry()) {
+            return second;
+        }
+        return first.getExpiry().isAfter(second.getExpiry()) ? first : second;
+    }
+}
@@ -1,14 +1,13 @@
 package com.fusionslab.permissionshop.managers;
 
 import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.listeners.LuckPermsExpiryListener;
 import com.fusionslab.permissionshop.models.TimedPermission;
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.LuckPermsProvider;
 import net.luckperms.api.cacheddata.CachedPermissionData;
-import net.luckperms.api.model.data.DataMutateResult;
 import net.luckperms.api.model.group.Group;
 import net.luckperms.api.model.user.User;
-import net.luckperms.api.node.Node;
 import net.luckperms.api.node.NodeEqualityPredicate;
 import net.luckperms.api.node.NodeType;
 import net.luckperms.api.node.types.PermissionNode;
@@ -18,10 +17,10 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.permissions.PermissionAttachment;
 
-import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -30,22 +29,40 @@ import java.util.stream.Collectors;
  */
 public class PermissionManager {
 
+    /**
+     * LuckPerms stores expiry times in whole seconds
+     */
+    static final long NODE_EXPIRY_TOLERANCE_MILLIS = 1000;
+
     private final PermissionsShop plugin;
-    private final Map<UUID, List<TimedPermission>> timedPermissions;
-    private final Map<UUID, Map<String, PermissionAttachment>> playerPermissions;
+    private final TimedPermissionRegistry timedPermissions = new TimedPermissionRegistry();
+    private final Map<UUID, Map<String, PermissionAttachment>> playerPermissions = new ConcurrentHashMap<>();
+    private final ExpiryScheduler expiryScheduler = new ExpiryScheduler();
+    private final PermissionDecisionCache decisionCache;
     private LuckPerms luckPerms;
+    private PermissionMutationBatcher mutationBatcher;
     private boolean luckPermsEnabled = false;
+    private boolean nativeExpiry = false;
 
     public PermissionManager(PermissionsShop plugin) {
         this.plugin = plugin;
-        this.timedPermissions = new HashMap<>();
-        this.playerPermissions = new HashMap<>();
+        this.decisionCache = new PermissionDecisionCache(plugin);
 
         // Try to get LuckPerms API
         try {
             this.luckPerms = LuckPermsProvider.get();
+            this.mutationBatcher = new PermissionMutationBatcher(plugin, luckPerms);
             luckPermsEnabled = true;
             plugin.getLogger().info("Successfully hooked into LuckPerms!");
+
+            // Cached permission decisions are dropped when LuckPerms recalculates a user
+            decisionCache.register(luckPerms);
+
+            // Let LuckPerms expire timed nodes itself and follow its events
+            if (plugin.getConfig().getBoolean("luckperms.native_expiry", true)) {
+                new LuckPermsExpiryListener(plugin).register(luckPerms);
+                nativeExpiry = true;
+            }
         } catch (IllegalStateException e) {
             plugin.getLogger().severe("LuckPerms not found! Falling back to Bukkit permission system.");
         }
@@ -57,31 +74,30 @@ public class PermissionManager {
      * @param player Player to grant permission to
      * @param permission Permission to grant
      * @param expiryTimeMillis Expiration time in milliseconds (0 for permanent)
-     * @return Whether the permission was granted successfully
+     * @return Future with whether the permission was granted and saved
      */
-    public boolean grantPermission(Player player, String permission, long expiryTimeMillis) {
+    public CompletableFuture<Boolean> grantPermission(Player player, String permission, long expiryTimeMillis) {
         if (luckPermsEnabled) {
             return grantLuckPermsPermission(player, permission, expiryTimeMillis);
         } else {
             // Fallback to Bukkit permissions
             UUID playerUuid = player.getUniqueId();
 
-            playerPermissions.putIfAbsent(playerUuid, new HashMap<>());
-            Map<String, PermissionAttachment> playerPerms = playerPermissions.get(playerUuid);
-
-            // Remove existing permission if present
-            if (playerPerms.containsKey(permission)) {
-                player.removeAttachment(playerPerms.get(permission));
-                playerPerms.remove(permission);
-            }
+            Map<String, PermissionAttachment> playerPerms =
+                    playerPermissions.computeIfAbsent(playerUuid, uuid -> new ConcurrentHashMap<>());
 
-            // Add new permission
+            // Add new permission, removing the existing one if present
             PermissionAttachment attachment = player.addAttachment(plugin);
             attachment.setPermission(permission, true);
-            playerPerms.put(permission, attachment);
+
+            PermissionAttachment previous = playerPerms.put(permission, attachment);
+            if (previous != null) {
+                player.removeAttachment(previous);
+            }
+            decisionCache.invalidate(playerUuid);
 
             player.updateCommands();
-            return true;
+            return CompletableFuture.completedFuture(true);
         }
     }
 
@@ -91,41 +107,10 @@ public class PermissionManager {
      * @param player Player to grant permission to
      * @param permission Permission to grant
      * @param expiryTimeMillis Expiration time in milliseconds (0 for permanent)
-     * @return Whether the permission was granted successfully
+     * @return Future with whether the node was added and saved
      */
-    private boolean grantLuckPermsPermission(Player player, String permission, long expiryTimeMillis) {
-        try {
-            // Use modifyUser for atomic load-modify-save operations as recommended in docs
-            luckPerms.getUserManager().modifyUser(player.getUniqueId(), user -> {
-                // Build the permission node using the specific PermissionNode builder
-                PermissionNode.Builder nodeBuilder = PermissionNode.builder(permission);
-
-                // Add expiry if not permanent
-                if (expiryTimeMillis > 0) {
-                    Duration duration = Duration.ofMillis(expiryTimeMillis - System.currentTimeMillis());
-                    nodeBuilder.expiry(duration);
-                }
-
-                // Create the node
-                PermissionNode node = nodeBuilder.build();
-
-                // Add the node
-                DataMutateResult result = user.data().add(node);
-
-                if (result.wasSuccessful()) {
-                    plugin.getLogger().info("Granted permission " + permission + " to " + player.getName() +
-                            (expiryTimeMillis > 0 ? " until " + new Date(expiryTimeMillis) : " permanently"));
-                } else {
-                    plugin.getLogger().warning("Failed to grant permission " + permission + " to " + player.getName() +
-                            ": " + result.name());
-                }
-            });
-
-            return true;
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "Error granting LuckPerms permission to " + player.getName(), e);
-            return false;
-        }
+    private CompletableFuture<Boolean> grantLuckPermsPermission(Player player, String permission, long expiryTimeMillis) {
+        return mutationBatcher.grant(player.getUniqueId(), player.getName(), permission, expiryTimeMillis);
     }
 
     /**
@@ -133,28 +118,25 @@ public class PermissionManager {
      *
      * @param player Player to revoke permission from
      * @param permission Permission to revoke
-     * @return Whether the permission was revoked successfully
+     * @return Future with whether the permission was revoked
      */
-    public boolean revokePermission(Player player, String permission) {
+    public CompletableFuture<Boolean> revokePermission(Player player, String permission) {
         if (luckPermsEnabled) {
             return revokeLuckPermsPermission(player, permission);
         } else {
             // Fallback to Bukkit permissions
             UUID playerUuid = player.getUniqueId();
 
-            if (playerPermissions.containsKey(playerUuid)) {
-                Map<String, PermissionAttachment> playerPerms = playerPermissions.get(playerUuid);
-
-                if (playerPerms.containsKey(permission)) {
-                    PermissionAttachment attachment = playerPerms.get(permission);
-                    player.removeAttachment(attachment);
-                    playerPerms.remove(permission);
+            Map<String, PermissionAttachment> playerPerms = playerPermissions.get(playerUuid);
+            PermissionAttachment attachment = playerPerms != null ? playerPerms.remove(permission) : null;
 
-                    player.updateCommands();
-                    return true;
-                }
+            if (attachment != null) {
+                player.removeAttachment(attachment);
+                decisionCache.invalidate(playerUuid);
+                player.updateCommands();
+                return CompletableFuture.completedFuture(true);
             }
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
     }
 
@@ -163,46 +145,10 @@ public class PermissionManager {
      *
      * @param player Player to revoke permission from
      * @param permission Permission to revoke
-     * @return Whether the permission was revoked successfully
+     * @return Future with whether the removal was saved
      */
-    private boolean revokeLuckPermsPermission(Player player, String permission) {
-        try {
-            // Use modifyUser for atomic load-modify-save operations
-            final boolean[] success = {false}; // Array to hold success state from lambda
-
-            luckPerms.getUserManager().modifyUser(player.getUniqueId(), user -> {
-                // Find all nodes matching our permission
-                Set<Node> toRemove = new HashSet<>();
-
-                // Collect all permission nodes that match our key
-                for (Node node : user.getNodes()) {
-                    if (node.getType() == NodeType.PERMISSION &&
-                            node.getKey().equalsIgnoreCase(permission)) {
-                        toRemove.add(node);
-                    }
-                }
-
-                // Remove each node
-                boolean anySuccess = false;
-                for (Node node : toRemove) {
-                    DataMutateResult result = user.data().remove(node);
-                    if (result.wasSuccessful()) {
-                        anySuccess = true;
-                    }
-                }
-
-                success[0] = anySuccess;
-
-                if (success[0]) {
-                    plugin.getLogger().info("Revoked permission " + permission + " from " + player.getName());
-                }
-            });
-
-            return success[0];
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "Error revoking LuckPerms permission from " + player.getName(), e);
-            return false;
-        }
+    private CompletableFuture<Boolean> revokeLuckPermsPermission(Player player, String permission) {
+        return mutationBatcher.revoke(player.getUniqueId(), player.getName(), permission);
     }
     /**
      * Adds a timed permission
@@ -210,30 +156,26 @@ public class PermissionManager {
      * @param timedPermission TimedPermission to add
      */
     public void addTimedPermission(TimedPermission timedPermission) {
-        UUID playerUuid = timedPermission.getPlayerUuid();
-
-        timedPermissions.putIfAbsent(playerUuid, new ArrayList<>());
-        List<TimedPermission> playerTimedPerms = timedPermissions.get(playerUuid);
-
-        // Remove existing timed permission with same node if present
-        Iterator<TimedPermission> iterator = playerTimedPerms.iterator();
-        while (iterator.hasNext()) {
-            TimedPermission perm = iterator.next();
-            if (perm.getPermission().equals(timedPermission.getPermission())) {
-                iterator.remove();
-            }
-        }
-
-        // Add new timed permission
-        playerTimedPerms.add(timedPermission);
+        trackTimedPermission(timedPermission);
 
         // Grant permission to player if online
-        Player player = Bukkit.getPlayer(playerUuid);
+        Player player = Bukkit.getPlayer(timedPermission.getPlayerUuid());
         if (player != null && player.isOnline()) {
             grantPermission(player, timedPermission.getPermission(), timedPermission.getExpirationTime());
         }
     }
 
+    /**
+     * Tracks a timed permission for expiry without granting it
+     *
+     * @param timedPermission TimedPermission to track
+     */
+    public void trackTimedPermission(TimedPermission timedPermission) {
+        // Add new timed permission, replacing any existing one with the same node
+        timedPermissions.put(timedPermission);
+        expiryScheduler.schedule(timedPermission);
+    }
+
     /**
      * Removes a timed permission
      *
@@ -241,34 +183,35 @@ public class PermissionManager {
      * @param permission Permission to remove
      */
     public void removeTimedPermission(UUID playerUuid, String permission) {
-        if (timedPermissions.containsKey(playerUuid)) {
-            List<TimedPermission> playerTimedPerms = timedPermissions.get(playerUuid);
-
-            // Remove timed permission
-            Iterator<TimedPermission> iterator = playerTimedPerms.iterator();
-            while (iterator.hasNext()) {
-                TimedPermission perm = iterator.next();
-                if (perm.getPermission().equals(permission)) {
-                    iterator.remove();
-                }
-            }
+        // Remove timed permission
+        if (timedPermissions.removeIf(playerUuid, perm -> perm.getPermission().equals(permission)).isEmpty()) {
+            return;
+        }
 
-            // Revoke permission from player if online
-            Player player = Bukkit.getPlayer(playerUuid);
-            if (player != null && player.isOnline()) {
-                revokePermission(player, permission);
-            }
+        // Revoke permission from player if online
+        Player player = Bukkit.getPlayer(playerUuid);
+        if (player != null && player.isOnline()) {
+            revokePermission(player, permission);
         }
     }
 
     /**
-     * Gets a player's timed permissions
+     * Gets a snapshot of a player's timed permissions
      *
      * @param playerUuid Player UUID
-     * @return List of timed permissions
+     * @return Immutable list of timed permissions
      */
     public List<TimedPermission> getTimedPermissions(UUID playerUuid) {
-        return timedPermissions.getOrDefault(playerUuid, new ArrayList<>());
+        return timedPermissions.get(playerUuid);
+    }
+
+    /**
+     * Gets a snapshot of all players' timed permissions
+     *
+     * @return Immutable map of player UUIDs to their timed permissions
+     */
+    public Map<UUID, List<TimedPermission>> getAllTimedPermissions() {
+        return timedPermissions.snapshot();
     }
 
     /**
@@ -279,14 +222,7 @@ public class PermissionManager {
      * @return Whether the player has the timed permission
      */
     public boolean hasTimedPermission(UUID playerUuid, String permission) {
-        if (timedPermissions.containsKey(playerUuid)) {
-            for (TimedPermission perm : timedPermissions.get(playerUuid)) {
-                if (perm.getPermission().equals(permission) && !perm.hasExpired()) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return getTimedPermission(playerUuid, permission) != null;
     }
 
     /**
@@ -297,95 +233,128 @@ public class PermissionManager {
      * @return TimedPermission or null if not found
      */
     public TimedPermission getTimedPermission(UUID playerUuid, String permission) {
-        if (timedPermissions.containsKey(playerUuid)) {
-            for (TimedPermission perm : timedPermissions.get(playerUuid)) {
-                if (perm.getPermission().equals(permission) && !perm.hasExpired()) {
-                    return perm;
-                }
-            }
-        }
-        return null;
+        TimedPermission perm = timedPermissions.find(playerUuid, permission);
+        return perm != null && !perm.hasExpired() ? perm : null;
     }
 
     /**
-     * Loads a player's permissions when they join
+     * Brings a player's permission nodes in line with their purchases. The player's nodes are read once
+     * and only the difference is written, so a player who already has everything costs no LuckPerms save.
      *
-     * @param player Player to load permissions for
+     * @param player Player to reconcile
+     * @param expected Permissions the player should have, with their expiration time (0 for permanent)
+     * @param managed Permissions that are removed when the player has them without an active purchase
+     * @return Future completed once LuckPerms has saved the changes
      */
-    public void loadPlayerPermissions(Player player) {
+    public CompletableFuture<Void> reconcilePermissions(Player player, Map<String, Long> expected, Set<String> managed) {
         UUID playerUuid = player.getUniqueId();
 
-        if (timedPermissions.containsKey(playerUuid)) {
-            List<TimedPermission> playerTimedPerms = timedPermissions.get(playerUuid);
-            List<TimedPermission> expiredPerms = new ArrayList<>();
-
-            // Process permissions
-            for (TimedPermission timedPerm : playerTimedPerms) {
-                if (timedPerm.hasExpired()) {
-                    expiredPerms.add(timedPerm);
-
-                    // Update purchase in database
-                    plugin.getPurchaseManager().deactivatePurchase(timedPerm.getPurchaseId());
-                } else {
-                    // Grant permission
-                    grantPermission(player, timedPerm.getPermission(), timedPerm.getExpirationTime());
-                }
+        if (luckPermsEnabled) {
+            // A user LuckPerms hasn't loaded has nothing to compare against, so everything is missing
+            User user = luckPerms.getUserManager().getUser(playerUuid);
+            PermissionDiff diff = PermissionDiff.compute(
+                    user != null ? user.getNodes(NodeType.PERMISSION) : Collections.emptyList(), expected, managed);
+
+            // LuckPerms saves the whole difference in one batch
+            List<CompletableFuture<Boolean>> saved = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : diff.getMissing().entrySet()) {
+                saved.add(mutationBatcher.grant(playerUuid, player.getName(), entry.getKey(), entry.getValue()));
             }
+            for (String permission : diff.getExtra()) {
+                saved.add(mutationBatcher.revoke(playerUuid, player.getName(), permission));
+            }
+            return CompletableFuture.allOf(saved.toArray(new CompletableFuture[0]));
+        }
 
-            // Remove expired permissions
-            playerTimedPerms.removeAll(expiredPerms);
+        // Bukkit attachments only live for the session, compare against the ones given so far
+        Map<String, PermissionAttachment> attached = playerPermissions.getOrDefault(playerUuid, Collections.emptyMap());
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            if (!attached.containsKey(entry.getKey())) {
+                grantPermission(player, entry.getKey(), entry.getValue());
+            }
         }
+        for (String permission : managed) {
+            if (!expected.containsKey(permission) && attached.containsKey(permission)) {
+                revokePermission(player, permission);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
     }
 
     /**
-     * Cleans up expired permissions
+     * Expires timed permissions that are due. Runs on the main thread every tick,
+     * or as a safety net sweep when LuckPerms expires nodes itself,
+     * and does no work unless a permission has actually expired.
      */
     public void cleanupExpiredPermissions() {
         long now = System.currentTimeMillis();
 
-        for (Map.Entry<UUID, List<TimedPermission>> entry : timedPermissions.entrySet()) {
-            UUID playerUuid = entry.getKey();
-            List<TimedPermission> playerTimedPerms = entry.getValue();
-            List<TimedPermission> expiredPerms = new ArrayList<>();
-
-            // Find expired permissions
-            for (TimedPermission timedPerm : playerTimedPerms) {
-                if (timedPerm.getExpirationTime() <= now) {
-                    expiredPerms.add(timedPerm);
-
-                    // Update purchase in database
-                    plugin.getPurchaseManager().deactivatePurchase(timedPerm.getPurchaseId());
-
-                    // Handle player operations
-                    Player player = Bukkit.getPlayer(playerUuid);
-                    if (player != null && player.isOnline()) {
-                        // Revoke the permission
-                        revokePermission(player, timedPerm.getPermission());
-
-                        // If this was a flight permission, schedule disabling flight mode on the main thread
-                        if (timedPerm.getPermission().equalsIgnoreCase("essentials.fly") ||
-                                timedPerm.getPermission().endsWith(".fly")) {
-
-                            // Schedule on main thread
-                            Bukkit.getScheduler().runTask(plugin, () -> {
-                                if (player.isOnline()) {
-                                    if (player.isFlying() || player.getAllowFlight()) {
-                                        // Disable flight mode
-                                        player.setAllowFlight(false);
-                                        player.setFlying(false);
-                                        plugin.getMessages().sendPrefixedMessage(player, "permission.flight_disabled");
-                                    }
-                                }
-                            });
-                        }
-                    }
+        for (TimedPermission timedPerm : expiryScheduler.pollExpired(now)) {
+            // Skip permissions that were replaced or removed after being scheduled
+            if (!timedPermissions.remove(timedPerm)) {
+                continue;
+            }
+
+            expirePermission(timedPerm);
+        }
+    }
+
+    /**
+     * Handles LuckPerms removing a timed permission node from a user
+     *
+     * @param playerUuid Player UUID
+     * @param permission Permission node that was removed
+     */
+    public void handleExpiredNode(UUID playerUuid, String permission) {
+        // Nodes removed well before their expiry were revoked by someone, not expired
+        long now = System.currentTimeMillis() + NODE_EXPIRY_TOLERANCE_MILLIS;
+
+        List<TimedPermission> expired = timedPermissions.removeIf(playerUuid, timedPerm ->
+                timedPerm.getPermission().equalsIgnoreCase(permission) && timedPerm.getExpirationTime() <= now);
+
+        for (TimedPermission timedPerm : expired) {
+            expirePermission(timedPerm);
+        }
+    }
+
+    /**
+     * Handles a timed permission that has expired
+     *
+     * @param timedPerm Expired timed permission
+     */
+    private void expirePermission(TimedPermission timedPerm) {
+        // Update purchase in database
+        plugin.getPurchaseManager().deactivatePurchase(timedPerm.getPurchaseId());
+
+        // Handle player operations
+        Player player = Bukkit.getPlayer(timedPerm.getPlayerUuid());
+        if (player != null && player.isOnline()) {
+            // Revoke the permission, LuckPerms removes expired nodes on its own
+            if (!nativeExpiry) {
+                revokePermission(player, timedPerm.getPermission());
+            }
+
+            // If this was a flight permission, disable flight mode
+            if (timedPerm.getPermission().equalsIgnoreCase("essentials.fly") ||
+                    timedPerm.getPermission().endsWith(".fly")) {
+                if (player.isFlying() || player.getAllowFlight()) {
+                    player.setAllowFlight(false);
+                    player.setFlying(false);
+                    plugin.getMessages().sendPrefixedMessage(player, "permission.flight_disabled");
                 }
             }
+        }
+    }
 
-            // Remove expired permissions from list
-            playerTimedPerms.removeAll(expiredPerms);
+    /**
+     * Applies queued LuckPerms permission changes immediately
+     */
+    public void flushPermissionChanges() {
+        if (mutationBatcher != null) {
+            mutationBatcher.flushAll();
         }
     }
+
     /**
      * Cleans up a player's permissions when they quit
      *
@@ -395,6 +364,19 @@ public class PermissionManager {
         // With LuckPerms, permissions persist through server restarts
         // so we only need to clean up our Bukkit fallback permissions
         playerPermissions.remove(playerUuid);
+        decisionCache.invalidate(playerUuid);
+    }
+
+    /**
+     * Checks if a player has one of the shop's permissions, caching the decision
+     * until the player's permissions change
+     *
+     * @param player Player to check
+     * @param permission Permission to check
+     * @return Whether the player has the permission
+     */
+    public boolean hasCachedPermission(Player player, String permission) {
+        return decisionCache.hasPermission(player, permission);
     }
 
     /**
@@ -464,6 +446,15 @@ public class PermissionManager {
         }
     }
 
+    /**
+     * Checks if LuckPerms expires timed permission nodes itself
+     *
+     * @return Whether native LuckPerms expiry is used
+     */
+    public boolean isNativeExpiry() {
+        return nativeExpiry;
+    }
+
     /**
      * Checks if LuckPerms is enabled
      *
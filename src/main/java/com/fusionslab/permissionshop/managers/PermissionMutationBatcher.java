@@ -0,0 +1,244 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.model.data.DataMutateResult;
+import net.luckperms.api.model.data.TemporaryNodeMergeStrategy;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.NodeType;
+import net.luckperms.api.node.types.PermissionNode;
+import org.bukkit.Bukkit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Collects LuckPerms permission grants and revokes per user and applies
+ * each user's changes in a single modifyUser call
+ */
+public class PermissionMutationBatcher {
+
+    private final PermissionsShop plugin;
+    private final LuckPerms luckPerms;
+    private final long windowTicks;
+    private final Map<UUID, PendingMutations> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a batcher for the given LuckPerms API
+     *
+     * @param plugin Plugin instance
+     * @param luckPerms LuckPerms API
+     */
+    public PermissionMutationBatcher(PermissionsShop plugin, LuckPerms luckPerms) {
+        this.plugin = plugin;
+        this.luckPerms = luckPerms;
+        this.windowTicks = Math.max(0, plugin.getConfig().getLong("luckperms.batch_window", 1));
+    }
+
+    /**
+     * Queues a permission grant
+     *
+     * @param playerUuid Player UUID
+     * @param playerName Player name for logging
+     * @param permission Permission to grant
+     * @param expiryTimeMillis Expiration time in milliseconds (0 for permanent)
+     * @return Future with whether the node was added and the user's batch saved
+     */
+    public CompletableFuture<Boolean> grant(UUID playerUuid, String playerName, String permission, long expiryTimeMillis) {
+        return queue(playerUuid, playerName, new Mutation(permission, true, expiryTimeMillis));
+    }
+
+    /**
+     * Queues a permission revoke
+     *
+     * @param playerUuid Player UUID
+     * @param playerName Player name for logging
+     * @param permission Permission to revoke
+     * @return Future with whether the user's batch was saved without the node
+     */
+    public CompletableFuture<Boolean> revoke(UUID playerUuid, String playerName, String permission) {
+        return queue(playerUuid, playerName, new Mutation(permission, false, 0));
+    }
+
+    /**
+     * Applies all queued changes immediately
+     */
+    public void flushAll() {
+        for (UUID playerUuid : new ArrayList<>(pending.keySet())) {
+            flush(playerUuid);
+        }
+    }
+
+    private CompletableFuture<Boolean> queue(UUID playerUuid, String playerName, Mutation mutation) {
+        boolean[] created = {false};
+
+        // Mutations are added inside compute so they can't race with flush removing the batch
+        PendingMutations batch = pending.compute(playerUuid, (uuid, existing) -> {
+            PendingMutations mutations = existing;
+            if (mutations == null) {
+                mutations = new PendingMutations(playerName);
+                created[0] = true;
+            }
+
+            // A later change to the same node replaces the earlier one. A change of the same kind
+            // shares its outcome, a grant undone by a revoke (or the other way round) never happens.
+            Mutation replaced = mutations.mutations.remove(mutation.key());
+            if (replaced != null) {
+                if (replaced.grant == mutation.grant) {
+                    mutation.future.thenAccept(replaced.future::complete);
+                } else {
+                    replaced.future.complete(false);
+                }
+            }
+            mutations.mutations.put(mutation.key(), mutation);
+            return mutations;
+        });
+
+        if (created[0]) {
+            if (windowTicks == 0) {
+                flush(playerUuid);
+            } else {
+                Bukkit.getScheduler().runTaskLater(plugin, () -> flush(playerUuid), windowTicks);
+            }
+        }
+
+        return mutation.future;
+    }
+
+    private void flush(UUID playerUuid) {
+        PendingMutations batch = pending.remove(playerUuid);
+        if (batch == null) {
+            return;
+        }
+
+        List<Mutation> mutations = new ArrayList<>(batch.mutations.values());
+
+        try {
+            // One load-modify-save for everything queued for this user
+            luckPerms.getUserManager().modifyUser(playerUuid, user -> {
+                for (Mutation mutation : mutations) {
+                    if (mutation.grant) {
+                        applyGrant(user, batch.playerName, mutation);
+                    } else {
+                        applyRevoke(user, batch.playerName, mutation);
+                    }
+                }
+            }).whenComplete((result, error) -> {
+                if (error != null) {
+                    plugin.getLogger().log(Level.SEVERE, "Error updating LuckPerms permissions for " + batch.playerName, error);
+                }
+
+                // Nothing is kept if the save failed
+                for (Mutation mutation : mutations) {
+                    mutation.future.complete(error == null && mutation.applied);
+                }
+            });
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Error updating LuckPerms permissions for " + batch.playerName, e);
+            for (Mutation mutation : mutations) {
+                mutation.future.complete(false);
+            }
+        }
+    }
+
+    private void applyGrant(User user, String playerName, Mutation mutation) {
+        PermissionNode.Builder nodeBuilder = PermissionNode.builder(mutation.permission);
+
+        // Add expiry if not permanent
+        if (mutation.expiryTimeMillis > 0) {
+            nodeBuilder.expiry(Duration.ofMillis(mutation.expiryTimeMillis - System.currentTimeMillis()));
+        }
+
+        DataMutateResult result;
+        if (mutation.expiryTimeMillis > 0) {
+            // Extends an existing timed node instead of failing because the player has it
+            result = user.data().add(nodeBuilder.build(), TemporaryNodeMergeStrategy.REPLACE_EXISTING_IF_DURATION_LONGER).getResult();
+        } else {
+            // Timed nodes with the same key would make adding the permanent one fail
+            for (PermissionNode node : new ArrayList<>(user.getNodes(NodeType.PERMISSION))) {
+                if (node.hasExpiry() && node.getPermission().equalsIgnoreCase(mutation.permission)) {
+                    user.data().remove(node);
+                }
+            }
+            result = user.data().add(nodeBuilder.build());
+        }
+
+        // Already having the node, or one lasting longer, leaves the player with what was granted
+        mutation.applied = result.wasSuccessful() || result == DataMutateResult.FAIL_ALREADY_HAS;
+
+        if (result.wasSuccessful()) {
+            plugin.getLogger().info("Granted permission " + mutation.permission + " to " + playerName +
+                    (mutation.expiryTimeMillis > 0 ? " until " + new Date(mutation.expiryTimeMillis) : " permanently"));
+        } else if (!mutation.applied) {
+            plugin.getLogger().warning("Failed to grant permission " + mutation.permission + " to " + playerName +
+                    ": " + result.name());
+        }
+    }
+
+    private void applyRevoke(User user, String playerName, Mutation mutation) {
+        // Collect all permission nodes that match our key
+        List<Node> toRemove = new ArrayList<>();
+        for (Node node : user.getNodes()) {
+            if (node.getType() == NodeType.PERMISSION && node.getKey().equalsIgnoreCase(mutation.permission)) {
+                toRemove.add(node);
+            }
+        }
+
+        boolean anySuccess = false;
+        for (Node node : toRemove) {
+            if (user.data().remove(node).wasSuccessful()) {
+                anySuccess = true;
+            }
+        }
+
+        // Not having the node to begin with counts as revoked
+        mutation.applied = true;
+
+        if (anySuccess) {
+            plugin.getLogger().info("Revoked permission " + mutation.permission + " from " + playerName);
+        }
+    }
+
+    /**
+     * Changes queued for one user
+     */
+    private static class PendingMutations {
+        private final String playerName;
+        private final Map<String, Mutation> mutations = new LinkedHashMap<>();
+
+        private PendingMutations(String playerName) {
+            this.playerName = playerName;
+        }
+    }
+
+    /**
+     * A queued grant or revoke
+     */
+    private static class Mutation {
+        private final String permission;
+        private final boolean grant;
+        private final long expiryTimeMillis;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        private volatile boolean applied;
+
+        private Mutation(String permission, boolean grant, long expiryTimeMillis) {
+            this.permission = permission;
+            this.grant = grant;
+            this.expiryTimeMillis = expiryTimeMillis;
+        }
+
+        private String key() {
+            return permission.toLowerCase(Locale.ROOT);
+        }
+    }
+}
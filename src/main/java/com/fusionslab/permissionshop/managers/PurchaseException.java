@@ -0,0 +1,41 @@
+package com.fusionslab.permissionshop.managers;
+
+/**
+ * Expected failure of a purchase stage, carrying the message to show the player.
+ * No stack trace is recorded since these are part of normal operation.
+ */
+public class PurchaseException extends RuntimeException {
+
+    private final String messageKey;
+    private final Object[] replacements;
+
+    /**
+     * Creates a purchase failure
+     *
+     * @param messageKey Key of the message to send, or null to send nothing
+     * @param replacements Key-value pairs for placeholders
+     */
+    public PurchaseException(String messageKey, Object... replacements) {
+        super(messageKey, null, false, false);
+        this.messageKey = messageKey;
+        this.replacements = replacements;
+    }
+
+    /**
+     * Gets the key of the message to send
+     *
+     * @return Message key or null if nothing should be sent
+     */
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    /**
+     * Gets the placeholder replacements for the message
+     *
+     * @return Key-value pairs for placeholders
+     */
+    public Object[] getReplacements() {
+        return replacements;
+    }
+}
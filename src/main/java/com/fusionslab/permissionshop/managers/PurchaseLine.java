@@ -0,0 +1,88 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.ShopItem;
+
+/**
+ * An item bought in some quantity as part of a purchase.
+ * Timed permissions stack their duration, limited commands and home slots stack their uses.
+ */
+public class PurchaseLine {
+
+    private final ShopItem item;
+    private final int quantity;
+    private int purchaseId = -1;
+
+    /**
+     * Creates a purchase line
+     *
+     * @param item Item being purchased
+     * @param quantity Quantity of the item
+     */
+    public PurchaseLine(ShopItem item, int quantity) {
+        this.item = item;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Gets the item being purchased
+     *
+     * @return Shop item
+     */
+    public ShopItem getItem() {
+        return item;
+    }
+
+    /**
+     * Gets the quantity of the item
+     *
+     * @return Quantity
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the price of the whole line
+     *
+     * @return Item price times quantity
+     */
+    public double getPrice() {
+        return item.getPrice() * quantity;
+    }
+
+    /**
+     * Gets the duration of all bought quantities together
+     *
+     * @return Duration in seconds
+     */
+    public long getDuration() {
+        return (long) item.getDuration() * quantity;
+    }
+
+    /**
+     * Gets the uses of all bought quantities together
+     *
+     * @return Number of uses
+     */
+    public int getUses() {
+        return item.getUses() * quantity;
+    }
+
+    /**
+     * Gets the ID of the saved purchase
+     *
+     * @return Purchase ID or -1 if not saved yet
+     */
+    public int getPurchaseId() {
+        return purchaseId;
+    }
+
+    /**
+     * Sets the ID of the saved purchase
+     *
+     * @param purchaseId Purchase ID
+     */
+    public void setPurchaseId(int purchaseId) {
+        this.purchaseId = purchaseId;
+    }
+}
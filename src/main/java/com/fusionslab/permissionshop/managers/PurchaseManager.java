@@ -1,6 +1,8 @@
 package com.fusionslab.permissionshop.managers;
 
 import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.config.ShopCatalog;
+import com.fusionslab.permissionshop.economy.EconomyManager;
 import com.fusionslab.permissionshop.models.Purchase;
 import com.fusionslab.permissionshop.models.PurchaseType;
 import com.fusionslab.permissionshop.models.ShopItem;
@@ -8,8 +10,21 @@ import com.fusionslab.permissionshop.models.TimedPermission;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 /**
@@ -18,306 +33,579 @@ import java.util.logging.Level;
 public class PurchaseManager {
 
     private final PermissionsShop plugin;
+    private final PurchaseSerializer serializer = new PurchaseSerializer();
+    private final PurchasePreloadCache preloadCache;
+    private final Set<PurchaseTransaction> inProgress = ConcurrentHashMap.newKeySet();
 
     public PurchaseManager(PermissionsShop plugin) {
         this.plugin = plugin;
+        this.preloadCache = new PurchasePreloadCache(plugin.getConfig().getLong("storage.preload.expiry", 60) * 1000L);
     }
 
     /**
-     * Makes a purchase
+     * Makes a purchase of a single item
      *
      * @param player Player making the purchase
      * @param itemId ID of the item to purchase
-     * @return Whether the purchase was successful
+     * @return Future with whether the purchase was successful, completed on the main thread
      */
-    public boolean makePurchase(Player player, String itemId) {
-        ShopItem item = plugin.getConfigManager().getShopItem(itemId);
+    public CompletableFuture<Boolean> makePurchase(Player player, String itemId) {
+        return makePurchase(player, itemId, 1);
+    }
+
+    /**
+     * Makes a purchase of an item in some quantity
+     *
+     * @param player Player making the purchase
+     * @param itemId ID of the item to purchase
+     * @param quantity Quantity to purchase
+     * @return Future with whether the purchase was successful, completed on the main thread
+     */
+    public CompletableFuture<Boolean> makePurchase(Player player, String itemId, int quantity) {
+        Map<String, Integer> items = new LinkedHashMap<>();
+        items.put(itemId, quantity);
+        return checkout(player, items);
+    }
+
+    /**
+     * Purchases several items together: the total is withdrawn once, all purchases are
+     * saved in one transaction and all permissions are granted in one go.
+     * Runs once the player's previous purchases are done, so spamming the buy command
+     * can't race a purchase against itself. Rejected if too many of them are still queued.
+     *
+     * @param player Player making the purchase
+     * @param items Quantities keyed by item ID, in the order to process them
+     * @return Future with whether the purchase was successful, completed on the main thread
+     */
+    public CompletableFuture<Boolean> checkout(Player player, Map<String, Integer> items) {
+        Map<String, Integer> snapshot = new LinkedHashMap<>(items);
+        int maxQueued = plugin.getConfig().getInt("shop.max_queued_purchases", 3);
+
+        // Purchases complete on the main thread, so the next one starts there too
+        CompletableFuture<Boolean> result = serializer.submit(player.getUniqueId(), maxQueued,
+                () -> processPurchase(player, snapshot));
 
-        if (item == null) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.item_not_found");
-            return false;
+        if (result == null) {
+            plugin.getMessages().sendPrefixedMessage(player, "error.too_many_purchases");
+            return CompletableFuture.completedFuture(false);
         }
+        return result;
+    }
 
-        // Check if player has enough money
-        if (!plugin.getEconomyManager().hasEnough(player, item.getPrice())) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.not_enough_money",
-                    "price", plugin.getEconomyManager().format(item.getPrice()),
-                    "balance", plugin.getEconomyManager().format(plugin.getEconomyManager().getBalance(player)));
-            return false;
+    /**
+     * Processes a purchase. The purchase runs in stages: validate, withdraw the price,
+     * save the purchases, grant the items, dispatch item commands and confirm. Economy and storage calls run off
+     * the main thread, anything touching Bukkit runs on it. If a stage fails, the stages
+     * before it are undone in reverse order.
+     *
+     * @param player Player making the purchase
+     * @param items Quantities keyed by item ID
+     * @return Future with whether the purchase was successful, completed on the main thread
+     */
+    private CompletableFuture<Boolean> processPurchase(Player player, Map<String, Integer> items) {
+        List<PurchaseLine> lines = new ArrayList<>(items.size());
+        int maxQuantity = plugin.getConfig().getInt("shop.max_quantity", 64);
+
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            ShopItem item = plugin.getConfigManager().getShopItem(entry.getKey());
+
+            if (item == null) {
+                plugin.getMessages().sendPrefixedMessage(player, "error.item_not_found");
+                return CompletableFuture.completedFuture(false);
+            }
+
+            int quantity = entry.getValue();
+            String error = validate(item, quantity, maxQuantity);
+            if (error != null) {
+                plugin.getMessages().sendPrefixedMessage(player, error,
+                        "item", item.getName(),
+                        "max", maxQuantity);
+                return CompletableFuture.completedFuture(false);
+            }
+
+            lines.add(new PurchaseLine(item, quantity));
+        }
+
+        if (lines.isEmpty()) {
+            plugin.getMessages().sendPrefixedMessage(player, "cart.empty");
+            return CompletableFuture.completedFuture(false);
         }
 
-        // Process purchase based on type
-        boolean success = false;
-        UUID playerUuid = player.getUniqueId();
-        long now = System.currentTimeMillis();
+        PurchaseTransaction transaction = new PurchaseTransaction(player, lines, System.currentTimeMillis());
+
+        // Don't queue more purchases behind an economy provider that is too slow
+        if (transaction.getTotalPrice() > 0 && !plugin.getEconomyManager().isAvailable()) {
+            plugin.getMessages().sendPrefixedMessage(player, "error.shop_unavailable");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        inProgress.add(transaction);
+
+        CompletableFuture<Boolean> result = withdrawFunds(transaction)
+                .thenCompose(ignored -> persist(transaction))
+                .thenComposeAsync(ignored -> grant(transaction), plugin.getMainThreadExecutor())
+                .thenRunAsync(() -> {
+                    dispatchCommands(transaction);
+                    confirm(transaction);
+                }, plugin.getMainThreadExecutor())
+                .handleAsync((ignored, e) -> {
+                    if (e != null) {
+                        fail(transaction, e);
+                        return false;
+                    }
+                    return true;
+                }, plugin.getMainThreadExecutor());
+
+        // Also completes when the stages can't be scheduled after the plugin was disabled
+        result.whenComplete((success, e) -> inProgress.remove(transaction));
+        return result;
+    }
+
+    /**
+     * Aborts the purchases still in progress and undoes their completed stages.
+     * Their remaining stages run on the main thread, which no longer takes tasks once
+     * the plugin is disabled. Must run before the economy shuts down so refunds go through.
+     */
+    public void shutdown() {
+        int aborted = 0;
+        for (PurchaseTransaction transaction : inProgress) {
+            transaction.abort(plugin.getLogger());
+            aborted++;
+        }
+        inProgress.clear();
+
+        if (aborted > 0) {
+            plugin.getLogger().warning("Aborted " + aborted + " purchases in progress, their payments were refunded.");
+        }
+    }
+
+    /**
+     * Checks that an item can be purchased before anything is charged
+     *
+     * @param item Item to check
+     * @param quantity Quantity to purchase
+     * @param maxQuantity Highest quantity allowed
+     * @return Key of the error message or null if the item is valid
+     */
+    private String validate(ShopItem item, int quantity, int maxQuantity) {
+        if (quantity < 1 || quantity > maxQuantity) {
+            return "error.invalid_quantity";
+        }
 
         switch (item.getType()) {
             case TIMED_PERMISSION:
-                success = processTimedPermissionPurchase(player, item, playerUuid, now);
-                break;
+                return item.getDuration() <= 0 ? "error.invalid_duration" : null;
             case LIMITED_COMMAND:
-                success = processLimitedCommandPurchase(player, item, playerUuid, now);
-                break;
+                return item.getUses() <= 0 ? "error.invalid_uses" : null;
             case PERMANENT_PERMISSION:
-                success = processPermanentPermissionPurchase(player, item, playerUuid, now);
-                break;
+                // Owning a permanent permission twice doesn't add anything
+                return quantity > 1 ? "error.single_quantity" : null;
             case ONE_TIME_COMMAND:
-                success = processOneTimeCommandPurchase(player, item, playerUuid, now);
-                break;
+                return null;
             case HOME_SLOT:
-                success = processHomeSlotPurchase(player, item, playerUuid, now);
-                break;
+                return getHomeSlotCommand(item.getUses(), "") == null ? "error.no_home_plugin" : null;
             default:
-                plugin.getMessages().sendPrefixedMessage(player, "error.invalid_purchase_type");
-                return false;
+                return "error.invalid_purchase_type";
         }
+    }
 
-        if (success) {
-            // Charge the player
-            plugin.getEconomyManager().withdraw(player, item.getPrice());
+    /**
+     * Withdraws the total price off the main thread, refunding it if a later stage fails
+     *
+     * @param transaction Purchase transaction
+     * @return Future completed once the price is withdrawn
+     */
+    private CompletableFuture<Void> withdrawFunds(PurchaseTransaction transaction) {
+        double price = transaction.getTotalPrice();
+        if (price <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            // Send success message
-            plugin.getMessages().sendPrefixedMessage(player, "purchase.success",
-                    "item", item.getName(),
-                    "price", plugin.getEconomyManager().format(item.getPrice()));
+        EconomyManager economy = plugin.getEconomyManager();
+        Player player = transaction.getPlayer();
 
-            return true;
-        }
+        return economy.withdrawAsync(player, price).thenCompose(withdrawn -> {
+            if (!withdrawn) {
+                return economy.getBalanceAsync(player).thenAccept(balance -> {
+                    throw new PurchaseException("error.not_enough_money",
+                            "price", economy.format(price),
+                            "balance", economy.format(balance));
+                });
+            }
 
-        return false;
+            transaction.addCompensation(() -> economy.depositAsync(player, price).whenComplete((deposited, e) -> {
+                if (e != null || !deposited) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not confirm refund of " + economy.format(price)
+                            + " to " + player.getName() + " for " + transaction.getDescription(), e);
+                }
+            }));
+            return CompletableFuture.completedFuture(null);
+        });
     }
 
     /**
-     * Processes a timed permission purchase
+     * Saves the purchases off the main thread in one transaction, deactivating them if a later stage fails.
+     * One-time commands and home slots are saved inactive in the same transaction for record keeping.
+     *
+     * @param transaction Purchase transaction
+     * @return Future completed once the purchases are saved
      */
-    private boolean processTimedPermissionPurchase(Player player, ShopItem item, UUID playerUuid, long now) {
-        if (item.getDuration() <= 0) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.invalid_duration");
-            return false;
-        }
-
-        // Calculate expiration time
-        long expirationTime = now + (item.getDuration() * 1000L);
-
-        // Try to grant the permission first using LuckPerms
-        boolean permissionGranted = plugin.getPermissionManager().grantPermission(
-                player,
-                item.getPermission(),
-                expirationTime
-        );
-
-        if (!permissionGranted) {
-            plugin.getLogger().log(Level.WARNING, "Failed to grant permission " + item.getPermission() + " to " + player.getName());
-            plugin.getMessages().sendPrefixedMessage(player, "error.permission_grant_failed");
-            return false;
-        }
-
-        // Create purchase
-        Purchase purchase = new Purchase(
-                playerUuid,
-                item.getId(),
-                now,
-                expirationTime,
-                -1, // Unlimited uses
-                true // Active
-        );
-
-        // Save purchase
-        int purchaseId = plugin.getStorageManager().savePurchase(purchase);
-        if (purchaseId == -1) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.database_error");
-            // Try to revoke the permission since we failed to save
-            plugin.getPermissionManager().revokePermission(player, item.getPermission());
-            return false;
-        }
-
-        // Create timed permission
-        TimedPermission timedPermission = new TimedPermission(
-                playerUuid,
-                item.getPermission(),
-                expirationTime,
-                purchaseId
-        );
-
-        // Add timed permission to our tracking
-        plugin.getPermissionManager().addTimedPermission(timedPermission);
-
-        // Send additional message about duration
-        plugin.getMessages().sendPrefixedMessage(player, "purchase.permission_duration",
-                "duration", formatTimeRemaining(expirationTime - now));
-
-        return true;
+    private CompletableFuture<Void> persist(PurchaseTransaction transaction) {
+        if (transaction.isAborted()) {
+            throw new PurchaseException(null);
+        }
+
+        List<PurchaseLine> saved = new ArrayList<>();
+        List<Purchase> purchases = new ArrayList<>();
+
+        for (PurchaseLine line : transaction.getLines()) {
+            long expirationTime;
+            int remainingUses;
+            boolean active = true;
+
+            switch (line.getItem().getType()) {
+                case TIMED_PERMISSION:
+                    expirationTime = transaction.getExpirationTime(line);
+                    remainingUses = -1; // Unlimited uses
+                    break;
+                case LIMITED_COMMAND:
+                    expirationTime = 0; // No expiration
+                    remainingUses = line.getUses();
+                    break;
+                case PERMANENT_PERMISSION:
+                    expirationTime = 0; // No expiration
+                    remainingUses = -1; // Unlimited uses
+                    break;
+                case ONE_TIME_COMMAND:
+                case HOME_SLOT:
+                    expirationTime = transaction.getPurchaseTime(); // Expired immediately
+                    remainingUses = 0; // No uses
+                    active = false;
+                    break;
+                default:
+                    continue;
+            }
+
+            saved.add(line);
+            purchases.add(new Purchase(
+                    transaction.getPlayerUuid(),
+                    line.getItem().getId(),
+                    transaction.getPurchaseTime(),
+                    expirationTime,
+                    remainingUses,
+                    active
+            ));
+        }
+
+        if (purchases.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return plugin.getStorageManager().savePurchasesAsync(purchases).handle((purchaseIds, e) -> {
+            // A rolled back write-behind batch fails the future, the storage logged why
+            if (e != null || purchaseIds.size() != saved.size()) {
+                throw new PurchaseException("error.database_error");
+            }
+
+            for (int i = 0; i < saved.size(); i++) {
+                int purchaseId = purchaseIds.get(i);
+                saved.get(i).setPurchaseId(purchaseId);
+                if (purchases.get(i).isActive()) {
+                    transaction.addCompensation(() -> deactivatePurchase(purchaseId));
+                }
+            }
+            return null;
+        });
     }
 
     /**
-     * Processes a limited command purchase
+     * Grants the purchased items that can be undone and collects the commands for the rest.
+     * Runs on the main thread. LuckPerms changes made here are saved together in one user modification.
+     *
+     * @param transaction Purchase transaction
+     * @return Future completed once the granted permissions are saved
      */
-    private boolean processLimitedCommandPurchase(Player player, ShopItem item, UUID playerUuid, long now) {
-        if (item.getUses() <= 0) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.invalid_uses");
-            return false;
-        }
-
-        // Create purchase
-        Purchase purchase = new Purchase(
-                playerUuid,
-                item.getId(),
-                now,
-                0, // No expiration
-                item.getUses(),
-                true // Active
-        );
-
-        // Save purchase
-        int purchaseId = plugin.getStorageManager().savePurchase(purchase);
-        if (purchaseId == -1) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.database_error");
-            return false;
-        }
-
-        // Update purchase with ID
-        purchase = new Purchase(
-                purchaseId,
-                playerUuid,
-                item.getId(),
-                now,
-                0,
-                item.getUses(),
-                true
-        );
-
-        // Add to usage manager
-        plugin.getUsageManager().addPurchase(purchase);
-
-        // Send additional message about uses
-        plugin.getMessages().sendPrefixedMessage(player, "purchase.command_usage",
-                "uses", String.valueOf(item.getUses()));
-
-        return true;
+    private CompletableFuture<Void> grant(PurchaseTransaction transaction) {
+        Player player = transaction.getPlayer();
+
+        // Nothing can be granted once the player is gone, the purchase is undone silently
+        if (!player.isOnline()) {
+            throw new PurchaseException(null);
+        }
+
+        // Commands can't be undone, so they are resolved now and dispatched last
+        for (PurchaseLine line : transaction.getLines()) {
+            ShopItem item = line.getItem();
+
+            if (item.getType() == PurchaseType.ONE_TIME_COMMAND) {
+                String command = item.getCommand().replace("{player}", player.getName());
+                for (int i = 0; i < line.getQuantity(); i++) {
+                    transaction.addCommand(command);
+                }
+            } else if (item.getType() == PurchaseType.HOME_SLOT) {
+                String homeCommand = getHomeSlotCommand(line.getUses(), player.getName());
+                if (homeCommand == null) {
+                    throw new PurchaseException("error.no_home_plugin");
+                }
+                transaction.addCommand(homeCommand);
+            }
+        }
+
+        List<CompletableFuture<Boolean>> permissions = new ArrayList<>();
+
+        for (PurchaseLine line : transaction.getLines()) {
+            ShopItem item = line.getItem();
+
+            switch (item.getType()) {
+                case TIMED_PERMISSION:
+                    permissions.add(grantPermission(transaction, item, transaction.getExpirationTime(line)));
+                    break;
+                case PERMANENT_PERMISSION:
+                    // 0 expiration means permanent
+                    permissions.add(grantPermission(transaction, item, 0));
+                    break;
+                case LIMITED_COMMAND:
+                    int purchaseId = line.getPurchaseId();
+                    plugin.getUsageManager().addPurchase(new Purchase(
+                            purchaseId,
+                            transaction.getPlayerUuid(),
+                            item.getId(),
+                            transaction.getPurchaseTime(),
+                            0,
+                            line.getUses(),
+                            true
+                    ));
+                    transaction.addCompensation(() -> plugin.getUsageManager().removePurchase(transaction.getPlayerUuid(), purchaseId));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return CompletableFuture.allOf(permissions.toArray(new CompletableFuture[0])).thenRun(() -> {
+            if (!permissions.stream().allMatch(CompletableFuture::join)) {
+                throw new PurchaseException("error.permission_grant_failed");
+            }
+        });
     }
 
     /**
-     * Processes a permanent permission purchase
+     * Grants an item's permission, revoking it if a later stage fails
+     *
+     * @param transaction Purchase transaction
+     * @param item Item granting the permission
+     * @param expirationTime Expiration timestamp or 0 for permanent
+     * @return Future with whether the permission was granted and saved
      */
-    private boolean processPermanentPermissionPurchase(Player player, ShopItem item, UUID playerUuid, long now) {
-        // Grant permission with LuckPerms (0 expiration means permanent)
-        boolean permissionGranted = plugin.getPermissionManager().grantPermission(
-                player,
-                item.getPermission(),
-                0
-        );
-
-        if (!permissionGranted) {
-            plugin.getLogger().log(Level.WARNING, "Failed to grant permanent permission " + item.getPermission() + " to " + player.getName());
-            plugin.getMessages().sendPrefixedMessage(player, "error.permission_grant_failed");
-            return false;
-        }
-
-        // Create purchase
-        Purchase purchase = new Purchase(
-                playerUuid,
-                item.getId(),
-                now,
-                0, // No expiration
-                -1, // Unlimited uses
-                true // Active
-        );
-
-        // Save purchase
-        int purchaseId = plugin.getStorageManager().savePurchase(purchase);
-        if (purchaseId == -1) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.database_error");
-            // Try to revoke the permission since we failed to save
-            plugin.getPermissionManager().revokePermission(player, item.getPermission());
-            return false;
-        }
-
-        // Send additional message
-        plugin.getMessages().sendPrefixedMessage(player, "purchase.permission_permanent");
-
-        return true;
+    private CompletableFuture<Boolean> grantPermission(PurchaseTransaction transaction, ShopItem item, long expirationTime) {
+        Player player = transaction.getPlayer();
+        String permission = item.getPermission();
+
+        // Revoked on failure too, a node that was added but not saved must not stay behind
+        transaction.addCompensation(() -> plugin.getPermissionManager().revokePermission(player, permission));
+
+        return plugin.getPermissionManager().grantPermission(player, permission, expirationTime).thenApply(granted -> {
+            if (!granted) {
+                plugin.getLogger().log(Level.WARNING, "Failed to grant permission " + permission + " to " + player.getName());
+            }
+            return granted;
+        });
     }
 
     /**
-     * Processes a one-time command purchase
+     * Confirms the purchase to the player. Runs on the main thread.
+     *
+     * @param transaction Purchase transaction
      */
-    private boolean processOneTimeCommandPurchase(Player player, ShopItem item, UUID playerUuid, long now) {
-        // Execute command
-        String command = item.getCommand().replace("{player}", player.getName());
-        boolean success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
-
-        if (!success) {
-            plugin.getMessages().sendPrefixedMessage(player, "error.command_failed");
-            return false;
-        }
-
-        // Create purchase (for record keeping)
-        Purchase purchase = new Purchase(
-                playerUuid,
-                item.getId(),
-                now,
-                now, // Expired immediately
-                0, // No uses
-                false // Inactive
-        );
-
-        // Save purchase
-        plugin.getStorageManager().savePurchase(purchase);
-
-        return true;
+    private void confirm(PurchaseTransaction transaction) {
+        Player player = transaction.getPlayer();
+
+        for (PurchaseLine line : transaction.getLines()) {
+            ShopItem item = line.getItem();
+
+            switch (item.getType()) {
+                case TIMED_PERMISSION:
+                    // Granted in the grant stage already, only its expiry is tracked here
+                    plugin.getPermissionManager().trackTimedPermission(new TimedPermission(
+                            transaction.getPlayerUuid(),
+                            item.getPermission(),
+                            transaction.getExpirationTime(line),
+                            line.getPurchaseId()
+                    ));
+
+                    plugin.getMessages().sendPrefixedMessage(player, "purchase.permission_duration",
+                            "duration", formatTimeRemaining(line.getDuration() * 1000L));
+                    break;
+                case LIMITED_COMMAND:
+                    plugin.getMessages().sendPrefixedMessage(player, "purchase.command_usage",
+                            "uses", String.valueOf(line.getUses()));
+                    break;
+                case PERMANENT_PERMISSION:
+                    plugin.getMessages().sendPrefixedMessage(player, "purchase.permission_permanent");
+                    break;
+                default:
+                    // One-time commands and home slots were recorded when the purchase was saved
+                    break;
+            }
+        }
+
+        plugin.getMessages().sendPrefixedMessage(player, "purchase.success",
+                "item", transaction.getDescription(),
+                "price", plugin.getEconomyManager().format(transaction.getTotalPrice()));
     }
 
     /**
-     * Processes a home slot purchase
+     * Undoes a failed purchase and tells the player why. Runs on the main thread.
+     *
+     * @param transaction Purchase transaction
+     * @param e Failure of the stage
      */
-    private boolean processHomeSlotPurchase(Player player, ShopItem item, UUID playerUuid, long now) {
-        // We need to check if the server is using EssentialsX or CMI
-        if (Bukkit.getPluginManager().isPluginEnabled("Essentials")) {
-            // EssentialsX
-            String command = "sethome-limit " + player.getName() + " " + item.getUses();
-            boolean success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+    private void fail(PurchaseTransaction transaction, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        Player player = transaction.getPlayer();
+
+        transaction.compensate(plugin.getLogger());
+
+        String messageKey;
+        Object[] replacements = new Object[0];
+
+        if (cause instanceof PurchaseException) {
+            PurchaseException failure = (PurchaseException) cause;
+            messageKey = failure.getMessageKey();
+            replacements = failure.getReplacements();
+        } else if (cause instanceof TimeoutException) {
+            plugin.getLogger().warning("Purchase of " + transaction.getDescription() + " by " + player.getName()
+                    + " timed out waiting for the economy provider.");
+            messageKey = "error.shop_unavailable";
+        } else {
+            plugin.getLogger().log(Level.SEVERE, "Purchase of " + transaction.getDescription()
+                    + " by " + player.getName() + " failed", cause);
+            messageKey = "error.purchase_failed";
+        }
 
-            if (!success) {
-                plugin.getMessages().sendPrefixedMessage(player, "error.command_failed");
-                return false;
+        if (messageKey != null && player.isOnline()) {
+            plugin.getMessages().sendPrefixedMessage(player, messageKey, replacements);
+        }
+    }
+
+    /**
+     * Dispatches the purchase's console commands. Runs on the main thread as the last stage
+     * that can fail, since a dispatched command can't be undone. Once the first command went
+     * through, the purchase is kept even if a later command fails.
+     *
+     * @param transaction Purchase transaction
+     */
+    private void dispatchCommands(PurchaseTransaction transaction) {
+        boolean dispatched = false;
+
+        for (String command : transaction.getCommands()) {
+            if (Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command)) {
+                if (!dispatched) {
+                    transaction.commit();
+                    dispatched = true;
+                }
+            } else if (!dispatched) {
+                throw new PurchaseException("error.command_failed");
+            } else {
+                plugin.getLogger().severe("Command '" + command + "' for the purchase of " + transaction.getDescription()
+                        + " by " + transaction.getPlayer().getName() + " failed after earlier commands went through.");
             }
+        }
+    }
+
+    /**
+     * Gets the command adding home slots with the installed home plugin
+     *
+     * @param slots Number of slots to add
+     * @param playerName Name of the player
+     * @return Command or null if neither EssentialsX nor CMI is enabled
+     */
+    private String getHomeSlotCommand(int slots, String playerName) {
+        if (Bukkit.getPluginManager().isPluginEnabled("Essentials")) {
+            return "sethome-limit " + playerName + " " + slots;
         } else if (Bukkit.getPluginManager().isPluginEnabled("CMI")) {
-            // CMI
-            String command = "cmi sethome add " + player.getName() + " " + item.getUses();
-            boolean success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            return "cmi sethome add " + playerName + " " + slots;
+        }
+        return null;
+    }
 
-            if (!success) {
-                plugin.getMessages().sendPrefixedMessage(player, "error.command_failed");
-                return false;
-            }
-        } else {
-            plugin.getMessages().sendPrefixedMessage(player, "error.no_home_plugin");
-            return false;
+    /**
+     * Gets the serializer keeping each player's purchases in order
+     *
+     * @return Purchase serializer
+     */
+    public PurchaseSerializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * Loads a player's purchases while they log in. Runs on the login thread and waits up to the
+     * preload timeout, so the purchases are usually in place by the time the player joins.
+     *
+     * @param playerUuid Player UUID
+     */
+    public void preloadPlayerPurchases(UUID playerUuid) {
+        CompletableFuture<List<Purchase>> purchases = plugin.getStorageManager().getActivePlayerPurchasesAsync(playerUuid);
+        preloadCache.put(playerUuid, purchases);
+
+        long timeout = plugin.getConfig().getLong("storage.preload.timeout", 3000);
+        try {
+            purchases.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning("Purchases of " + playerUuid + " took longer than " + timeout
+                    + "ms to load, they are applied once loaded.");
+        } catch (ExecutionException e) {
+            // Loaded again on join
+            preloadCache.discard(playerUuid);
+            plugin.getLogger().log(Level.SEVERE, "Could not preload purchases for " + playerUuid, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        // Create purchase (for record keeping)
-        Purchase purchase = new Purchase(
-                playerUuid,
-                item.getId(),
-                now,
-                now, // Expired immediately
-                0, // No uses
-                false // Inactive
-        );
+    /**
+     * Drops the purchases preloaded for a login that didn't go through
+     *
+     * @param playerUuid Player UUID
+     */
+    public void discardPreloadedPurchases(UUID playerUuid) {
+        preloadCache.discard(playerUuid);
+    }
 
-        // Save purchase
-        plugin.getStorageManager().savePurchase(purchase);
+    /**
+     * Loads a player's purchases, using the ones preloaded during login when available
+     *
+     * @param playerUuid Player UUID
+     * @return Future completed on the main thread once the purchases are applied
+     */
+    public CompletableFuture<Void> loadPlayerPurchases(UUID playerUuid) {
+        CompletableFuture<List<Purchase>> purchases = preloadCache.take(playerUuid);
+        if (purchases == null || purchases.isCompletedExceptionally()) {
+            purchases = plugin.getStorageManager().getActivePlayerPurchasesAsync(playerUuid);
+        }
 
-        return true;
+        // Preloaded purchases are applied right away instead of a tick later
+        if (purchases.isDone() && !purchases.isCompletedExceptionally() && Bukkit.isPrimaryThread()) {
+            applyPlayerPurchases(playerUuid, purchases.join());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return purchases
+                .thenAcceptAsync(loaded -> applyPlayerPurchases(playerUuid, loaded), plugin.getMainThreadExecutor())
+                .exceptionally(e -> {
+                    plugin.getLogger().log(Level.SEVERE, "Could not load purchases for " + playerUuid, e);
+                    return null;
+                });
     }
 
     /**
-     * Loads a player's purchases
+     * Applies a player's loaded purchases
      *
      * @param playerUuid Player UUID
+     * @param purchases Player's purchases
      */
-    public void loadPlayerPurchases(UUID playerUuid) {
-        List<Purchase> purchases = plugin.getStorageManager().getPlayerPurchases(playerUuid);
+    private void applyPlayerPurchases(UUID playerUuid, List<Purchase> purchases) {
+        Map<String, Long> expected = new HashMap<>();
 
         for (Purchase purchase : purchases) {
             if (!purchase.isActive()) {
@@ -339,13 +627,20 @@ public class PurchaseManager {
                                 purchase.getExpirationTime(),
                                 purchase.getId()
                         );
-                        plugin.getPermissionManager().addTimedPermission(timedPermission);
+                        plugin.getPermissionManager().trackTimedPermission(timedPermission);
+                        expected.merge(item.getPermission(), purchase.getExpirationTime(), PurchaseManager::laterExpiry);
                     } else {
                         // Deactivate expired purchase
                         deactivatePurchase(purchase.getId());
                     }
                     break;
                 case LIMITED_COMMAND:
+                    // Uses spent in a previous session may not be stored yet when the purchases were read
+                    Integer unsavedUses = plugin.getUseCounterManager().getUnsavedRemainingUses(purchase.getId());
+                    if (unsavedUses != null && unsavedUses < purchase.getRemainingUses()) {
+                        purchase.setRemainingUses(unsavedUses);
+                    }
+
                     if (purchase.hasUsesRemaining()) {
                         plugin.getUsageManager().addPurchase(purchase);
                     } else {
@@ -354,14 +649,42 @@ public class PurchaseManager {
                     }
                     break;
                 case PERMANENT_PERMISSION:
-                    // For online players, grant the permission
-                    Player player = Bukkit.getPlayer(playerUuid);
-                    if (player != null && player.isOnline()) {
-                        plugin.getPermissionManager().grantPermission(player, item.getPermission(), 0);
-                    }
+                    expected.put(item.getPermission(), 0L);
                     break;
             }
         }
+
+        // Write only the nodes the player is missing, or has without a purchase
+        Player player = Bukkit.getPlayer(playerUuid);
+        if (player != null && player.isOnline()) {
+            plugin.getPermissionManager().reconcilePermissions(player, expected, getManagedPermissions());
+        }
+    }
+
+    /**
+     * Gets the permissions reconciliation may remove from players without an active purchase
+     *
+     * @return Permissions of permission items, or none if removal is disabled
+     */
+    private Set<String> getManagedPermissions() {
+        if (!plugin.getConfig().getBoolean("luckperms.remove_unpurchased_nodes", false)) {
+            return Collections.emptySet();
+        }
+
+        Set<String> managed = new HashSet<>();
+        ShopCatalog catalog = plugin.getConfigManager().getCatalog();
+        for (ShopItem item : catalog.getItemsByType(PurchaseType.TIMED_PERMISSION)) {
+            managed.add(item.getPermission());
+        }
+        for (ShopItem item : catalog.getItemsByType(PurchaseType.PERMANENT_PERMISSION)) {
+            managed.add(item.getPermission());
+        }
+        return managed;
+    }
+
+    private static long laterExpiry(long first, long second) {
+        // 0 means permanent and outlasts any expiration time
+        return first == 0 || second == 0 ? 0 : Math.max(first, second);
     }
 
     /**
@@ -370,7 +693,7 @@ public class PurchaseManager {
      * @param purchaseId Purchase ID
      */
     public void deactivatePurchase(int purchaseId) {
-        plugin.getStorageManager().deactivatePurchase(purchaseId);
+        plugin.getStorageManager().deactivatePurchaseAsync(purchaseId);
     }
 
     /**
@@ -380,7 +703,7 @@ public class PurchaseManager {
      * @param remainingUses Remaining uses
      */
     public void updatePurchaseUses(int purchaseId, int remainingUses) {
-        plugin.getStorageManager().updatePurchaseUses(purchaseId, remainingUses);
+        plugin.getStorageManager().updatePurchaseUsesAsync(purchaseId, remainingUses);
     }
 
     /**
@@ -0,0 +1,93 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.Purchase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the purchases loaded while players log in until they join.
+ * Entries of logins that never complete are dropped once they are older than the expiry.
+ */
+public class PurchasePreloadCache {
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final long expiryMillis;
+
+    /**
+     * Creates an empty preload cache
+     *
+     * @param expiryMillis How long loaded purchases are kept
+     */
+    public PurchasePreloadCache(long expiryMillis) {
+        this.expiryMillis = expiryMillis;
+    }
+
+    /**
+     * Stores a player's purchase load, replacing an earlier one
+     *
+     * @param playerUuid Player UUID
+     * @param purchases Future of the player's active purchases
+     */
+    public void put(UUID playerUuid, CompletableFuture<List<Purchase>> purchases) {
+        long now = System.currentTimeMillis();
+        discardExpired(now);
+        entries.put(playerUuid, new Entry(purchases, now));
+    }
+
+    /**
+     * Takes a player's purchase load out of the cache
+     *
+     * @param playerUuid Player UUID
+     * @return Future of the player's active purchases, or null if none was loaded or it expired
+     */
+    public CompletableFuture<List<Purchase>> take(UUID playerUuid) {
+        Entry entry = entries.remove(playerUuid);
+        if (entry == null || entry.isExpired(System.currentTimeMillis(), expiryMillis)) {
+            return null;
+        }
+        return entry.purchases;
+    }
+
+    /**
+     * Drops a player's purchase load
+     *
+     * @param playerUuid Player UUID
+     */
+    public void discard(UUID playerUuid) {
+        entries.remove(playerUuid);
+    }
+
+    /**
+     * Gets the number of players with loaded purchases waiting for their join
+     *
+     * @return Number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void discardExpired(long now) {
+        entries.values().removeIf(entry -> entry.isExpired(now, expiryMillis));
+    }
+
+    /**
+     * Purchase load of one login
+     */
+    private static final class Entry {
+        private final CompletableFuture<List<Purchase>> purchases;
+        private final long createdAt;
+
+        private Entry(CompletableFuture<List<Purchase>> purchases, long createdAt) {
+            this.purchases = purchases;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(long now, long expiryMillis) {
+            return now - createdAt > expiryMillis;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.fusionslab.permissionshop.managers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the purchases of each player one after another, while purchases of different players run in parallel.
+ * A purchase starts once the player's previous one completed, on the thread that completed it.
+ * The queues are guarded by striped locks and removed once a player has nothing queued.
+ * A purchase is rejected if the player already has too many queued, so a spammed buy command can't grow a queue without bound.
+ */
+public class PurchaseSerializer {
+
+    private static final int STRIPES = 32;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger maxQueueLength = new AtomicInteger();
+
+    public PurchaseSerializer() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Queues a purchase behind the player's previous purchases
+     *
+     * @param playerUuid Player UUID
+     * @param queueLimit Most purchases a player may have queued or running, 0 for no limit
+     * @param task Starts the purchase and returns its future
+     * @param <T> Result type
+     * @return Future completed with the purchase's result, or null if the player's queue is full
+     */
+    public <T> CompletableFuture<T> submit(UUID playerUuid, int queueLimit, Supplier<CompletableFuture<T>> task) {
+        Stripe stripe = stripes[(playerUuid.hashCode() & 0x7fffffff) % STRIPES];
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Tail previous;
+        Tail tail = new Tail(result);
+        int queueLength;
+
+        synchronized (stripe) {
+            queueLength = stripe.queueLengths.getOrDefault(playerUuid, 0) + 1;
+            if (queueLimit > 0 && queueLength > queueLimit) {
+                rejected.increment();
+                return null;
+            }
+
+            previous = stripe.tails.put(playerUuid, tail);
+            stripe.queueLengths.put(playerUuid, queueLength);
+        }
+
+        submitted.increment();
+        pending.incrementAndGet();
+        maxQueueLength.accumulateAndGet(queueLength, Math::max);
+
+        result.whenComplete((value, e) -> {
+            pending.decrementAndGet();
+            synchronized (stripe) {
+                stripe.tails.remove(playerUuid, tail);
+                stripe.queueLengths.computeIfPresent(playerUuid, (uuid, length) -> length > 1 ? length - 1 : null);
+            }
+        });
+
+        if (previous == null) {
+            start(task, result);
+        } else {
+            // Started outside the lock, once the previous purchase is done either way
+            contended.increment();
+            long queuedAt = System.nanoTime();
+            previous.future.whenComplete((value, e) -> {
+                waitNanos.add(System.nanoTime() - queuedAt);
+                start(task, result);
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the number of purchases submitted since startup
+     *
+     * @return Number of purchases
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Gets the number of purchases that had to wait for an earlier purchase of the same player
+     *
+     * @return Number of contended purchases
+     */
+    public long getContended() {
+        return contended.sum();
+    }
+
+    /**
+     * Gets the number of purchases rejected because the player had too many queued
+     *
+     * @return Number of rejected purchases
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets the average time contended purchases waited before starting
+     *
+     * @return Average wait in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long count = contended.sum();
+        return count == 0 ? 0 : waitNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Gets the number of purchases queued or running
+     *
+     * @return Number of pending purchases
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Gets the longest queue of purchases a single player had
+     *
+     * @return Maximum queue length
+     */
+    public int getMaxQueueLength() {
+        return maxQueueLength.get();
+    }
+
+    private static <T> void start(Supplier<CompletableFuture<T>> task, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = task.get();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+
+        future.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    /**
+     * Last queued purchase of a player
+     */
+    private static final class Tail {
+        private final CompletableFuture<?> future;
+
+        private Tail(CompletableFuture<?> future) {
+            this.future = future;
+        }
+    }
+
+    /**
+     * Queues of the players hashed to one lock
+     */
+    private static final class Stripe {
+        private final Map<UUID, Tail> tails = new HashMap<>();
+        private final Map<UUID, Integer> queueLengths = new HashMap<>();
+    }
+}
@@ -0,0 +1,202 @@
+package com.fusionslab.permissionshop.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A purchase of one or more items moving through the purchase stages, together with the actions
+ * that undo the stages completed so far. Stages run one after another, but a transaction can be
+ * aborted from the main thread while a stage runs elsewhere, so the compensations are guarded.
+ */
+public class PurchaseTransaction {
+
+    private final Player player;
+    private final List<PurchaseLine> lines;
+    private final long purchaseTime;
+    private final Deque<Runnable> compensations = new ArrayDeque<>();
+    private final List<String> commands = new ArrayList<>();
+    private boolean aborted;
+
+    /**
+     * Creates a transaction for a purchase
+     *
+     * @param player Player making the purchase
+     * @param lines Items being purchased
+     * @param purchaseTime Purchase timestamp
+     */
+    public PurchaseTransaction(Player player, List<PurchaseLine> lines, long purchaseTime) {
+        this.player = player;
+        this.lines = List.copyOf(lines);
+        this.purchaseTime = purchaseTime;
+    }
+
+    /**
+     * Registers the action undoing a completed stage
+     *
+     * @param compensation Action to run on the main thread if a later stage fails
+     */
+    public void addCompensation(Runnable compensation) {
+        synchronized (this) {
+            if (!aborted) {
+                compensations.push(compensation);
+                return;
+            }
+        }
+
+        // Aborted while the stage ran, undo it right away
+        compensation.run();
+    }
+
+    /**
+     * Drops the compensations once the purchase can no longer be undone
+     */
+    public synchronized void commit() {
+        compensations.clear();
+    }
+
+    /**
+     * Aborts the purchase and undoes its completed stages. Stages still running undo themselves
+     * when they complete.
+     *
+     * @param logger Logger for failing compensations
+     */
+    public void abort(Logger logger) {
+        synchronized (this) {
+            aborted = true;
+        }
+        compensate(logger);
+    }
+
+    /**
+     * Checks if the purchase was aborted
+     *
+     * @return Whether the purchase was aborted
+     */
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Undoes all completed stages, latest first. Runs on the main thread.
+     *
+     * @param logger Logger for failing compensations
+     */
+    public void compensate(Logger logger) {
+        Runnable compensation;
+        while ((compensation = pollCompensation()) != null) {
+            try {
+                compensation.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not undo purchase of " + getDescription() + " by " + player.getName(), e);
+            }
+        }
+    }
+
+    private synchronized Runnable pollCompensation() {
+        return compensations.poll();
+    }
+
+    /**
+     * Adds a console command that gives purchased items. Commands can't be undone,
+     * so they are dispatched only after every other stage has succeeded.
+     *
+     * @param command Command to dispatch
+     */
+    public void addCommand(String command) {
+        commands.add(command);
+    }
+
+    /**
+     * Gets the console commands to dispatch
+     *
+     * @return Commands in order
+     */
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Gets the player making the purchase
+     *
+     * @return Player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the player's UUID
+     *
+     * @return Player UUID
+     */
+    public UUID getPlayerUuid() {
+        return player.getUniqueId();
+    }
+
+    /**
+     * Gets the items being purchased
+     *
+     * @return Immutable list of purchase lines
+     */
+    public List<PurchaseLine> getLines() {
+        return lines;
+    }
+
+    /**
+     * Gets the price of all items together
+     *
+     * @return Total price
+     */
+    public double getTotalPrice() {
+        double total = 0;
+        for (PurchaseLine line : lines) {
+            total += line.getPrice();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the purchase timestamp
+     *
+     * @return Purchase timestamp
+     */
+    public long getPurchaseTime() {
+        return purchaseTime;
+    }
+
+    /**
+     * Gets the expiration time of a timed permission line
+     *
+     * @param line Purchase line
+     * @return Expiration timestamp
+     */
+    public long getExpirationTime(PurchaseLine line) {
+        return purchaseTime + line.getDuration() * 1000L;
+    }
+
+    /**
+     * Describes the purchased items, such as "Flight x2, Healing"
+     *
+     * @return Item names with quantities
+     */
+    public String getDescription() {
+        StringBuilder description = new StringBuilder();
+        for (PurchaseLine line : lines) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(line.getItem().getName());
+            if (line.getQuantity() > 1) {
+                description.append(" x").append(line.getQuantity());
+            }
+        }
+        return description.toString();
+    }
+}
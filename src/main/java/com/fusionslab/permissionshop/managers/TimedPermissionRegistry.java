@@ -0,0 +1,158 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.TimedPermission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe registry of timed permissions per player.
+ * Each player's permissions are kept as an immutable list, so reads never lock
+ * and callers always get a consistent snapshot. Writes copy the list under a lock
+ * striped by player UUID, so updates for one player are serialized while
+ * different players do not contend.
+ */
+public class TimedPermissionRegistry {
+
+    private static final int STRIPES = 32;
+
+    private final Map<UUID, List<TimedPermission>> permissions = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+
+    public TimedPermissionRegistry() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Adds a timed permission, replacing any existing one for the same node
+     *
+     * @param timedPermission TimedPermission to add
+     * @return Replaced timed permission or null if there was none
+     */
+    public TimedPermission put(TimedPermission timedPermission) {
+        UUID playerUuid = timedPermission.getPlayerUuid();
+
+        synchronized (lockFor(playerUuid)) {
+            List<TimedPermission> current = get(playerUuid);
+            List<TimedPermission> updated = new ArrayList<>(current.size() + 1);
+            TimedPermission replaced = null;
+
+            for (TimedPermission perm : current) {
+                if (perm.getPermission().equals(timedPermission.getPermission())) {
+                    replaced = perm;
+                } else {
+                    updated.add(perm);
+                }
+            }
+
+            updated.add(timedPermission);
+            permissions.put(playerUuid, Collections.unmodifiableList(updated));
+            return replaced;
+        }
+    }
+
+    /**
+     * Removes a specific timed permission instance
+     *
+     * @param timedPermission TimedPermission to remove
+     * @return Whether it was still registered
+     */
+    public boolean remove(TimedPermission timedPermission) {
+        return !removeIf(timedPermission.getPlayerUuid(), perm -> perm == timedPermission).isEmpty();
+    }
+
+    /**
+     * Removes a player's timed permissions matching a filter
+     *
+     * @param playerUuid Player UUID
+     * @param filter Filter for permissions to remove
+     * @return Removed timed permissions
+     */
+    public List<TimedPermission> removeIf(UUID playerUuid, Predicate<TimedPermission> filter) {
+        if (!permissions.containsKey(playerUuid)) {
+            return Collections.emptyList();
+        }
+
+        synchronized (lockFor(playerUuid)) {
+            List<TimedPermission> current = get(playerUuid);
+            List<TimedPermission> updated = new ArrayList<>(current.size());
+            List<TimedPermission> removed = new ArrayList<>();
+
+            for (TimedPermission perm : current) {
+                if (filter.test(perm)) {
+                    removed.add(perm);
+                } else {
+                    updated.add(perm);
+                }
+            }
+
+            if (removed.isEmpty()) {
+                return removed;
+            }
+
+            if (updated.isEmpty()) {
+                permissions.remove(playerUuid);
+            } else {
+                permissions.put(playerUuid, Collections.unmodifiableList(updated));
+            }
+
+            return removed;
+        }
+    }
+
+    /**
+     * Gets a snapshot of a player's timed permissions
+     *
+     * @param playerUuid Player UUID
+     * @return Immutable list of timed permissions
+     */
+    public List<TimedPermission> get(UUID playerUuid) {
+        return permissions.getOrDefault(playerUuid, Collections.emptyList());
+    }
+
+    /**
+     * Finds a player's timed permission for a node
+     *
+     * @param playerUuid Player UUID
+     * @param permission Permission node
+     * @return TimedPermission or null if not found
+     */
+    public TimedPermission find(UUID playerUuid, String permission) {
+        for (TimedPermission perm : get(playerUuid)) {
+            if (perm.getPermission().equals(permission)) {
+                return perm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a snapshot of all registered timed permissions.
+     * Later changes to the registry are not reflected in the returned map.
+     *
+     * @return Immutable map of player UUIDs to their timed permissions
+     */
+    public Map<UUID, List<TimedPermission>> snapshot() {
+        return Map.copyOf(permissions);
+    }
+
+    /**
+     * Gets the number of players with timed permissions
+     *
+     * @return Number of players
+     */
+    public int size() {
+        return permissions.size();
+    }
+
+    private Object lockFor(UUID playerUuid) {
+        return locks[(playerUuid.hashCode() & 0x7fffffff) % STRIPES];
+    }
+}
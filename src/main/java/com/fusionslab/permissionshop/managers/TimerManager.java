@@ -23,14 +23,16 @@ public class TimerManager {
         // Cancel existing task if running
         cancelTimerTask();
 
-        // Check interval from config (default: 30 seconds)
-        int checkInterval = plugin.getConfig().getInt("check_interval", 30) * 20;
+        // Expire due permissions every tick, ticks without expiries only check the next expiration time.
+        // With native LuckPerms expiry, expiries arrive as events and this only catches missed ones.
+        long interval = 1L;
+        if (plugin.getPermissionManager().isNativeExpiry()) {
+            interval = Math.max(1, plugin.getConfig().getInt("luckperms.safety_sweep_interval", 300)) * 20L;
+        }
 
-        // Start new task
-        timerTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
-            // Check for expired permissions
+        timerTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
             plugin.getPermissionManager().cleanupExpiredPermissions();
-        }, checkInterval, checkInterval);
+        }, interval, interval);
     }
 
     /**
@@ -2,6 +2,7 @@ package com.fusionslab.permissionshop.managers;
 
 import com.fusionslab.permissionshop.PermissionsShop;
 import com.fusionslab.permissionshop.models.Purchase;
+import com.fusionslab.permissionshop.models.PurchaseType;
 import com.fusionslab.permissionshop.models.ShopItem;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -9,7 +10,8 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -20,11 +22,16 @@ import java.util.concurrent.ConcurrentHashMap;
 public class UsageManager implements Listener {
 
     private final PermissionsShop plugin;
-    private final Map<UUID, Map<String, Purchase>> playerPurchases;
+    private final Map<UUID, UseLedger> ledgers;
+    private volatile CommandIndex commandIndex = CommandIndex.EMPTY;
 
     public UsageManager(PermissionsShop plugin) {
         this.plugin = plugin;
-        this.playerPurchases = new ConcurrentHashMap<>();
+        this.ledgers = new ConcurrentHashMap<>();
+
+        // Build the command index now and again once all plugins have registered their commands
+        rebuildCommandIndex();
+        plugin.getServer().getScheduler().runTask(plugin, this::rebuildCommandIndex);
 
         // Register events
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
@@ -36,25 +43,22 @@ public class UsageManager implements Listener {
      * @param purchase Purchase to add
      */
     public void addPurchase(Purchase purchase) {
-        UUID playerUuid = purchase.getPlayerUuid();
-
-        playerPurchases.putIfAbsent(playerUuid, new HashMap<>());
-        Map<String, Purchase> purchases = playerPurchases.get(playerUuid);
+        UseLedger ledger = ledgers.computeIfAbsent(purchase.getPlayerUuid(), uuid -> new UseLedger());
 
-        // Add the purchase
-        purchases.put(purchase.getItemId(), purchase);
+        // Stacked purchases of the same item are kept apart by purchase ID
+        ledger.add(commandIndex.getCommandKey(purchase.getItemId()), purchase);
     }
 
     /**
      * Removes a purchase from the usage manager
      *
      * @param playerUuid Player UUID
-     * @param itemId Item ID
+     * @param purchaseId Purchase ID
      */
-    public void removePurchase(UUID playerUuid, String itemId) {
-        if (playerPurchases.containsKey(playerUuid)) {
-            Map<String, Purchase> purchases = playerPurchases.get(playerUuid);
-            purchases.remove(itemId);
+    public void removePurchase(UUID playerUuid, int purchaseId) {
+        UseLedger ledger = ledgers.get(playerUuid);
+        if (ledger != null) {
+            ledger.remove(purchaseId);
         }
     }
 
@@ -62,10 +66,11 @@ public class UsageManager implements Listener {
      * Gets a player's purchases
      *
      * @param playerUuid Player UUID
-     * @return Map of purchases
+     * @return List of purchases
      */
-    public Map<String, Purchase> getPlayerPurchases(UUID playerUuid) {
-        return playerPurchases.getOrDefault(playerUuid, new HashMap<>());
+    public List<Purchase> getPlayerPurchases(UUID playerUuid) {
+        UseLedger ledger = ledgers.get(playerUuid);
+        return ledger != null ? ledger.getPurchases() : new ArrayList<>();
     }
 
     /**
@@ -76,97 +81,108 @@ public class UsageManager implements Listener {
      * @return Whether the player has the purchase
      */
     public boolean hasPurchase(UUID playerUuid, String itemId) {
-        if (playerPurchases.containsKey(playerUuid)) {
-            return playerPurchases.get(playerUuid).containsKey(itemId);
-        }
-        return false;
+        return getPurchase(playerUuid, itemId) != null;
     }
 
     /**
-     * Gets a purchase
+     * Gets the oldest purchase of an item
      *
      * @param playerUuid Player UUID
      * @param itemId Item ID
      * @return Purchase or null if not found
      */
     public Purchase getPurchase(UUID playerUuid, String itemId) {
-        if (playerPurchases.containsKey(playerUuid)) {
-            return playerPurchases.get(playerUuid).get(itemId);
+        Purchase oldest = null;
+        for (Purchase purchase : getPlayerPurchases(playerUuid)) {
+            if (purchase.getItemId().equals(itemId) && (oldest == null || purchase.getId() < oldest.getId())) {
+                oldest = purchase;
+            }
         }
-        return null;
+        return oldest;
+    }
+
+    /**
+     * Gets the total remaining uses of a command across a player's purchases
+     *
+     * @param playerUuid Player UUID
+     * @param command Command label
+     * @return Remaining uses, or -1 if unlimited
+     */
+    public int getRemainingUses(UUID playerUuid, String command) {
+        CommandIndex.Entry entry = commandIndex.find(command, 0, command.length());
+        UseLedger ledger = ledgers.get(playerUuid);
+        return entry != null && ledger != null ? ledger.getRemainingUses(entry.getCommandKey()) : 0;
     }
 
     /**
      * Checks if a player can use a command
      *
      * @param player Player to check
-     * @param command Command to check
+     * @param command Command label to check
      * @return Whether the player can use the command
      */
     public boolean canUseCommand(Player player, String command) {
-        UUID playerUuid = player.getUniqueId();
-
-        if (!playerPurchases.containsKey(playerUuid)) {
-            return false;
-        }
-
-        for (Purchase purchase : playerPurchases.get(playerUuid).values()) {
-            ShopItem item = plugin.getConfigManager().getShopItem(purchase.getItemId());
-
-            if (item == null) {
-                continue;
-            }
-
-            // Check if the command matches and the purchase has uses remaining
-            if (command.startsWith(item.getCommand()) && purchase.hasUsesRemaining()) {
-                return true;
-            }
-        }
-
-        return false;
+        CommandIndex.Entry entry = commandIndex.find(command, 0, command.length());
+        UseLedger ledger = ledgers.get(player.getUniqueId());
+        return entry != null && ledger != null && ledger.hasUses(entry.getCommandKey());
     }
 
     /**
      * Decrements the usage for a command
      *
      * @param player Player using the command
-     * @param command Command being used
+     * @param command Command label being used
      * @return Whether the usage was decremented
      */
     public boolean decrementUsage(Player player, String command) {
-        UUID playerUuid = player.getUniqueId();
+        CommandIndex.Entry entry = commandIndex.find(command, 0, command.length());
+        return entry != null && consumeUse(player.getUniqueId(), entry.getCommandKey());
+    }
+
+    /**
+     * Uses up one use of a command
+     *
+     * @param playerUuid Player UUID
+     * @param commandKey Command key
+     * @return Whether there was a use left
+     */
+    private boolean consumeUse(UUID playerUuid, String commandKey) {
+        UseLedger ledger = ledgers.get(playerUuid);
+        Purchase purchase = ledger != null ? ledger.consume(commandKey) : null;
 
-        if (!playerPurchases.containsKey(playerUuid)) {
+        if (purchase == null) {
             return false;
         }
 
-        for (Purchase purchase : playerPurchases.get(playerUuid).values()) {
-            ShopItem item = plugin.getConfigManager().getShopItem(purchase.getItemId());
+        int remainingUses = purchase.getRemainingUses();
 
-            if (item == null) {
-                continue;
-            }
-
-            // Check if the command matches and the purchase has uses remaining
-            if (command.startsWith(item.getCommand()) && purchase.hasUsesRemaining()) {
-                // Decrement uses
-                int remainingUses = purchase.decrementUses();
+        // Journal the use, the counter is written to the database with the next flush
+        plugin.getUseCounterManager().recordUse(purchase, remainingUses);
 
-                // Update purchase in database
-                plugin.getPurchaseManager().updatePurchaseUses(purchase.getId(), remainingUses);
+        // If no uses left, deactivate purchase
+        if (remainingUses == 0) {
+            purchase.setActive(false);
+            plugin.getPurchaseManager().deactivatePurchase(purchase.getId());
+            ledger.remove(purchase.getId());
+        }
 
-                // If no uses left, deactivate purchase
-                if (remainingUses == 0) {
-                    purchase.setActive(false);
-                    plugin.getPurchaseManager().deactivatePurchase(purchase.getId());
-                    removePurchase(playerUuid, purchase.getItemId());
-                }
+        return true;
+    }
 
-                return true;
-            }
+    /**
+     * Rebuilds the command index from the current shop items and registered commands
+     */
+    public void rebuildCommandIndex() {
+        CommandIndex index = CommandIndex.build(
+                plugin.getConfigManager().getCatalog().getItemsByType(PurchaseType.LIMITED_COMMAND),
+                plugin.getServer().getCommandMap()
+        );
+        commandIndex = index;
+
+        // Items may now cover different commands
+        for (UseLedger ledger : ledgers.values()) {
+            ledger.rekey(index::getCommandKey);
         }
-
-        return false;
     }
 
     /**
@@ -176,36 +192,35 @@ public class UsageManager implements Listener {
      */
     @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        // Check if the command is limited-use, without allocating for other commands
+        CommandIndex.Entry entry = commandIndex.findCommand(event.getMessage());
+        if (entry == null) {
+            return;
+        }
+
         Player player = event.getPlayer();
-        String command = event.getMessage().substring(1).split(" ")[0].toLowerCase();
-
-        // Check if the command is limited-use
-        for (ShopItem item : plugin.getConfigManager().getShopItems().values()) {
-            if (item.getCommand().toLowerCase().equals(command)) {
-                // Check if player has permission to use the command
-                if (player.hasPermission(item.getPermission())) {
-                    // Player has permission, allow command
-                    return;
-                }
-
-                // Check if player has purchased limited uses
-                if (canUseCommand(player, command)) {
-                    // Decrement usage
-                    decrementUsage(player, command);
-
-                    // Allow command
-                    return;
-                }
-
-                // Player doesn't have permission or purchased uses, show message
-                plugin.getMessages().sendPrefixedMessage(player, "error.no_permission_or_uses",
-                        "command", command);
-
-                // Cancel the command
-                event.setCancelled(true);
+        String command = entry.getLabel();
+        List<ShopItem> items = entry.getItems();
+
+        // Check if player has permission to use the command
+        for (ShopItem item : items) {
+            if (plugin.getPermissionManager().hasCachedPermission(player, item.getPermission())) {
+                // Player has permission, allow command
                 return;
             }
         }
+
+        // Check if player has purchased limited uses, decrement usage and allow command
+        if (consumeUse(player.getUniqueId(), entry.getCommandKey())) {
+            return;
+        }
+
+        // Player doesn't have permission or purchased uses, show message
+        plugin.getMessages().sendPrefixedMessage(player, "error.no_permission_or_uses",
+                "command", command);
+
+        // Cancel the command
+        event.setCancelled(true);
     }
 
     /**
@@ -214,6 +229,6 @@ public class UsageManager implements Listener {
      * @param playerUuid Player UUID
      */
     public void cleanupPlayerPurchases(UUID playerUuid) {
-        playerPurchases.remove(playerUuid);
+        ledgers.remove(playerUuid);
     }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.models.Purchase;
+import com.fusionslab.permissionshop.storage.AsyncStorageManager;
+import com.fusionslab.permissionshop.storage.UseJournal;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps limited-command use counters in memory and writes them to storage in batches.
+ * Every use is appended to a local journal first, which is replayed on startup
+ * so uses consumed before a crash are never refunded.
+ */
+public class UseCounterManager {
+
+    private final PermissionsShop plugin;
+    private final Map<Integer, Purchase> dirty = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> saving = new ConcurrentHashMap<>();
+    private UseJournal journal;
+    private BukkitTask flushTask;
+    private int pendingFlushes;
+
+    public UseCounterManager(PermissionsShop plugin) {
+        this.plugin = plugin;
+
+        try {
+            plugin.getDataFolder().mkdirs();
+            this.journal = new UseJournal(new File(plugin.getDataFolder(), "uses.journal"),
+                    plugin.getConfig().getBoolean("usage.journal_sync", false));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not open use journal, uses will be saved without it", e);
+        }
+    }
+
+    /**
+     * Writes uses left in the journal by a previous run to storage.
+     * Must be called before any purchases are loaded.
+     */
+    public void replayJournal() {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            int replayed = journal.replay(plugin.getStorageManager());
+
+            if (replayed < 0) {
+                plugin.getLogger().severe("Could not save the use counters from the journal, they are kept for the next start.");
+            } else if (replayed > 0) {
+                plugin.getLogger().info("Recovered " + replayed + " use counters from the journal.");
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not replay use journal " + journal.getFile(), e);
+        }
+    }
+
+    /**
+     * Starts the periodic flush task
+     */
+    public void startFlushTask() {
+        cancelFlushTask();
+
+        long interval = Math.max(1, plugin.getConfig().getInt("usage.flush_interval", 30)) * 20L;
+        flushTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> flush(purchase -> true), interval, interval);
+    }
+
+    /**
+     * Cancels the periodic flush task
+     */
+    public void cancelFlushTask() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+    }
+
+    /**
+     * Records a use of a purchase. Runs on the main thread.
+     *
+     * @param purchase Purchase that was used
+     * @param remainingUses Remaining uses after this use
+     */
+    public void recordUse(Purchase purchase, int remainingUses) {
+        if (journal != null) {
+            try {
+                journal.append(purchase.getId(), remainingUses);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not journal use of purchase " + purchase.getId(), e);
+            }
+        }
+
+        dirty.put(purchase.getId(), purchase);
+    }
+
+    /**
+     * Gets the remaining uses of a purchase that are not stored yet
+     *
+     * @param purchaseId Purchase ID
+     * @return Remaining uses, or null if storage is up to date
+     */
+    public Integer getUnsavedRemainingUses(int purchaseId) {
+        Purchase purchase = dirty.get(purchaseId);
+        return purchase != null ? Integer.valueOf(purchase.getRemainingUses()) : saving.get(purchaseId);
+    }
+
+    /**
+     * Writes a player's pending use counters to storage
+     *
+     * @param playerUuid Player UUID
+     * @return Future completed once the counters are stored
+     */
+    public CompletableFuture<Void> flushPlayer(UUID playerUuid) {
+        return flush(purchase -> purchase.getPlayerUuid().equals(playerUuid));
+    }
+
+    /**
+     * Writes pending use counters to storage. Runs on the main thread.
+     *
+     * @param filter Filter for purchases to write
+     * @return Future completed once the counters are stored, or kept for the next flush if that failed
+     */
+    public CompletableFuture<Void> flush(Predicate<Purchase> filter) {
+        Map<Purchase, Integer> snapshot = drain(filter);
+        if (snapshot.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        pendingFlushes++;
+        AsyncStorageManager storage = plugin.getStorageManager();
+
+        List<CompletableFuture<Boolean>> updates = snapshot.entrySet().stream()
+                .map(entry -> storage.updatePurchaseUsesAsync(entry.getKey().getId(), entry.getValue()))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(updates.toArray(new CompletableFuture[0]))
+                .thenCompose(result -> storage.flushAsync())
+                .thenApply(flushed -> flushed && updates.stream().allMatch(CompletableFuture::join))
+                .handleAsync((stored, error) -> {
+                    if (error != null || !stored) {
+                        plugin.getLogger().log(Level.SEVERE, "Could not save " + snapshot.size() + " use counters", error);
+
+                        // Keep them journaled and try again with the next flush
+                        for (Purchase purchase : snapshot.keySet()) {
+                            dirty.putIfAbsent(purchase.getId(), purchase);
+                        }
+                    }
+
+                    for (Map.Entry<Purchase, Integer> entry : snapshot.entrySet()) {
+                        saving.remove(entry.getKey().getId(), entry.getValue());
+                    }
+
+                    pendingFlushes--;
+                    compactJournal();
+                    return null;
+                }, plugin.getMainThreadExecutor());
+    }
+
+    /**
+     * Writes all pending use counters to storage and closes the journal
+     */
+    public void shutdown() {
+        cancelFlushTask();
+
+        AsyncStorageManager storage = plugin.getStorageManager();
+        boolean stored = true;
+        for (Map.Entry<Purchase, Integer> entry : drain(purchase -> true).entrySet()) {
+            stored &= storage.updatePurchaseUses(entry.getKey().getId(), entry.getValue());
+        }
+        stored &= storage.flush();
+
+        if (journal != null) {
+            try {
+                // Unsaved uses stay journaled and are replayed on the next start
+                if (stored) {
+                    journal.rewrite(Map.of());
+                } else {
+                    plugin.getLogger().severe("Could not save use counters, they are kept in the journal for the next start.");
+                }
+                journal.close();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not close use journal", e);
+            }
+        }
+    }
+
+    /**
+     * Removes matching dirty counters and reads their current values
+     *
+     * @param filter Filter for purchases to drain
+     * @return Remaining uses per purchase
+     */
+    private Map<Purchase, Integer> drain(Predicate<Purchase> filter) {
+        Map<Purchase, Integer> snapshot = new HashMap<>();
+
+        Iterator<Purchase> iterator = dirty.values().iterator();
+        while (iterator.hasNext()) {
+            Purchase purchase = iterator.next();
+            if (filter.test(purchase)) {
+                iterator.remove();
+                snapshot.put(purchase, purchase.getRemainingUses());
+                saving.put(purchase.getId(), purchase.getRemainingUses());
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Drops journal records that are now stored, once no flush is in flight. Runs on the main thread,
+     * the journal is rewritten on a storage thread. Counters of failed flushes are back in the dirty set,
+     * so their records are kept, and uses recorded meanwhile are after the checkpoint and kept as well.
+     */
+    private void compactJournal() {
+        if (journal == null || pendingFlushes > 0) {
+            return;
+        }
+
+        Map<Integer, Integer> unsaved = new HashMap<>();
+        for (Purchase purchase : dirty.values()) {
+            unsaved.put(purchase.getId(), purchase.getRemainingUses());
+        }
+
+        UseJournal.Checkpoint checkpoint;
+        try {
+            checkpoint = journal.checkpoint();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not compact use journal " + journal.getFile(), e);
+            return;
+        }
+
+        plugin.getStorageManager().runAsync(() -> {
+            try {
+                // Skipped if the journal was rewritten since, the next flush compacts it
+                journal.compact(unsaved, checkpoint);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not compact use journal " + journal.getFile(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.Purchase;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A player's limited-command uses, totalled per command and split by purchase.
+ * Stacked purchases of the same item are kept separately and used oldest first.
+ */
+public class UseLedger {
+
+    private final Map<Integer, Purchase> purchases = new ConcurrentHashMap<>();
+    private final Map<String, CommandUses> commands = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a purchase to the ledger
+     *
+     * @param commandKey Command the purchase covers, or null if it covers none right now
+     * @param purchase Purchase to add
+     */
+    public void add(String commandKey, Purchase purchase) {
+        purchases.put(purchase.getId(), purchase);
+
+        if (commandKey != null) {
+            commands.computeIfAbsent(commandKey, key -> new CommandUses()).add(purchase);
+        }
+    }
+
+    /**
+     * Removes a purchase from the ledger
+     *
+     * @param purchaseId Purchase ID
+     * @return Removed purchase or null if not found
+     */
+    public Purchase remove(int purchaseId) {
+        Purchase purchase = purchases.remove(purchaseId);
+
+        if (purchase != null) {
+            for (CommandUses uses : commands.values()) {
+                uses.remove(purchase);
+            }
+        }
+
+        return purchase;
+    }
+
+    /**
+     * Checks if there are uses left for a command
+     *
+     * @param commandKey Command key
+     * @return Whether the command can be used
+     */
+    public boolean hasUses(String commandKey) {
+        CommandUses uses = commands.get(commandKey);
+        return uses != null && uses.hasUses();
+    }
+
+    /**
+     * Gets the total remaining uses for a command
+     *
+     * @param commandKey Command key
+     * @return Remaining uses, or -1 if unlimited
+     */
+    public int getRemainingUses(String commandKey) {
+        CommandUses uses = commands.get(commandKey);
+        return uses != null ? uses.getRemaining() : 0;
+    }
+
+    /**
+     * Uses up one use of a command
+     *
+     * @param commandKey Command key
+     * @return Purchase the use was taken from or null if there are no uses left
+     */
+    public Purchase consume(String commandKey) {
+        CommandUses uses = commands.get(commandKey);
+        return uses != null ? uses.consume() : null;
+    }
+
+    /**
+     * Gets all purchases in the ledger
+     *
+     * @return List of purchases
+     */
+    public List<Purchase> getPurchases() {
+        return new ArrayList<>(purchases.values());
+    }
+
+    /**
+     * Regroups purchases after the command of their items may have changed
+     *
+     * @param commandKeys Function from item ID to command key, returning null for none
+     */
+    public void rekey(Function<String, String> commandKeys) {
+        commands.clear();
+
+        // Re-added oldest first, the purchases map has no order
+        List<Purchase> oldestFirst = new ArrayList<>(purchases.values());
+        oldestFirst.sort(Comparator.comparingLong(Purchase::getPurchaseTime).thenComparingInt(Purchase::getId));
+
+        for (Purchase purchase : oldestFirst) {
+            String commandKey = commandKeys.apply(purchase.getItemId());
+            if (commandKey != null) {
+                commands.computeIfAbsent(commandKey, key -> new CommandUses()).add(purchase);
+            }
+        }
+    }
+
+    /**
+     * Checks if the ledger is empty
+     *
+     * @return Whether there are no purchases
+     */
+    public boolean isEmpty() {
+        return purchases.isEmpty();
+    }
+
+    /**
+     * Uses for a single command
+     */
+    private static class CommandUses {
+        private final Map<Integer, Purchase> purchases = new LinkedHashMap<>();
+        private int remaining;
+        private int unlimited;
+
+        private synchronized void add(Purchase purchase) {
+            if (purchases.putIfAbsent(purchase.getId(), purchase) == null) {
+                count(purchase, 1);
+            }
+        }
+
+        private synchronized void remove(Purchase purchase) {
+            if (purchases.remove(purchase.getId()) != null) {
+                count(purchase, -1);
+            }
+        }
+
+        private synchronized boolean hasUses() {
+            return remaining > 0 || unlimited > 0;
+        }
+
+        private synchronized int getRemaining() {
+            return unlimited > 0 ? -1 : remaining;
+        }
+
+        private synchronized Purchase consume() {
+            if (!hasUses()) {
+                return null;
+            }
+
+            // Purchases are kept in insertion order, so the oldest one is used first
+            Iterator<Purchase> iterator = purchases.values().iterator();
+            while (iterator.hasNext()) {
+                Purchase purchase = iterator.next();
+                int uses = purchase.getRemainingUses();
+
+                if (uses == -1) {
+                    return purchase;
+                }
+
+                if (uses > 0) {
+                    purchase.decrementUses();
+                    remaining--;
+                    return purchase;
+                }
+            }
+
+            return null;
+        }
+
+        private void count(Purchase purchase, int sign) {
+            int uses = purchase.getRemainingUses();
+            if (uses == -1) {
+                unlimited += sign;
+            } else if (uses > 0) {
+                remaining += sign * uses;
+            }
+        }
+    }
+}
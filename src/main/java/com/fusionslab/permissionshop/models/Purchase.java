@@ -1,6 +1,7 @@
 package com.fusionslab.permissionshop.models;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a purchase made by a player
@@ -11,7 +12,7 @@ public class Purchase {
     private final String itemId;
     private final long purchaseTime;
     private final long expirationTime;
-    private int remainingUses;
+    private final AtomicInteger remainingUses;
     private boolean active;
 
     /**
@@ -31,7 +32,7 @@ public class Purchase {
         this.itemId = itemId;
         this.purchaseTime = purchaseTime;
         this.expirationTime = expirationTime;
-        this.remainingUses = remainingUses;
+        this.remainingUses = new AtomicInteger(remainingUses);
         this.active = active;
     }
 
@@ -100,7 +101,7 @@ public class Purchase {
      * @return Remaining uses
      */
     public int getRemainingUses() {
-        return remainingUses;
+        return remainingUses.get();
     }
 
     /**
@@ -109,7 +110,7 @@ public class Purchase {
      * @param remainingUses Remaining uses
      */
     public void setRemainingUses(int remainingUses) {
-        this.remainingUses = remainingUses;
+        this.remainingUses.set(remainingUses);
     }
 
     /**
@@ -118,7 +119,8 @@ public class Purchase {
      * @return New remaining uses count
      */
     public int decrementUses() {
-        return --remainingUses;
+        // Never goes below zero, even when uses are consumed concurrently
+        return remainingUses.updateAndGet(uses -> uses > 0 ? uses - 1 : uses);
     }
 
     /**
@@ -157,6 +159,7 @@ public class Purchase {
      * @return Whether the purchase has uses remaining
      */
     public boolean hasUsesRemaining() {
-        return remainingUses > 0 || remainingUses == -1; // -1 means unlimited
+        int uses = remainingUses.get();
+        return uses > 0 || uses == -1; // -1 means unlimited
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.fusionslab.permissionshop.models;
 
+import java.util.Locale;
+
 /**
  * Represents an item in the permissions shop
  */
@@ -14,6 +16,7 @@ public class ShopItem {
     private final String permission; // Permission node
     private final String command; // Command to execute
     private final boolean displayInShop;
+    private final String category; // Lowercase shop category, empty if none
 
     /**
      * Creates a new shop item
@@ -28,9 +31,11 @@ public class ShopItem {
      * @param permission Permission node
      * @param command Command to execute
      * @param displayInShop Whether to display in shop
+     * @param category Shop category, empty if none
      */
     public ShopItem(String id, String name, String description, double price, PurchaseType type,
-                    int duration, int uses, String permission, String command, boolean displayInShop) {
+                    int duration, int uses, String permission, String command, boolean displayInShop,
+                    String category) {
         this.id = id;
         this.name = name;
         this.description = description;
@@ -41,6 +46,7 @@ public class ShopItem {
         this.permission = permission;
         this.command = command;
         this.displayInShop = displayInShop;
+        this.category = category.toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -132,4 +138,13 @@ public class ShopItem {
     public boolean isDisplayInShop() {
         return displayInShop;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the shop category
+     *
+     * @return Lowercase category, empty if none
+     */
+    public String getCategory() {
+        return category;
+    }
+}
@@ -0,0 +1,183 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.models.Purchase;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * AsyncStorageManager that runs storage operations on a dedicated I/O executor
+ */
+public class AsyncStorage implements AsyncStorageManager {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final PermissionsShop plugin;
+    private final StorageManager delegate;
+    private final ExecutorService executor;
+
+    /**
+     * Creates an asynchronous layer in front of an initialized storage
+     *
+     * @param plugin Plugin instance
+     * @param delegate Storage to run operations on
+     */
+    public AsyncStorage(PermissionsShop plugin, StorageManager delegate) {
+        this.plugin = plugin;
+        this.delegate = delegate;
+
+        int threads = Math.max(1, plugin.getConfig().getInt("storage.io_threads", 2));
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "PermissionsShop-IO-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    @Override
+    public void initialize() {
+        delegate.initialize();
+    }
+
+    @Override
+    public void closeConnection() {
+        // Let already submitted operations finish before closing the storage
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for storage operations to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        delegate.closeConnection();
+    }
+
+    @Override
+    public boolean flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public int savePurchase(Purchase purchase) {
+        return delegate.savePurchase(purchase);
+    }
+
+    @Override
+    public List<Integer> savePurchases(List<Purchase> purchases) {
+        return delegate.savePurchases(purchases);
+    }
+
+    @Override
+    public List<Purchase> getPlayerPurchases(UUID playerUuid) {
+        return delegate.getPlayerPurchases(playerUuid);
+    }
+
+    @Override
+    public List<Purchase> getActivePlayerPurchases(UUID playerUuid) {
+        return delegate.getActivePlayerPurchases(playerUuid);
+    }
+
+    @Override
+    public Purchase getPurchase(int id) {
+        return delegate.getPurchase(id);
+    }
+
+    @Override
+    public boolean deactivatePurchase(int id) {
+        return delegate.deactivatePurchase(id);
+    }
+
+    @Override
+    public int deactivateExpiredPurchases(long now) {
+        return delegate.deactivateExpiredPurchases(now);
+    }
+
+    @Override
+    public boolean updatePurchaseUses(int id, int remainingUses) {
+        return delegate.updatePurchaseUses(id, remainingUses);
+    }
+
+    @Override
+    public CompletableFuture<Integer> savePurchaseAsync(Purchase purchase) {
+        return savePurchasesAsync(List.of(purchase)).thenApply(ids -> ids.isEmpty() ? -1 : ids.get(0));
+    }
+
+    @Override
+    public CompletableFuture<List<Integer>> savePurchasesAsync(List<Purchase> purchases) {
+        // Write-behind storages complete once their batch is stored, without holding an I/O thread
+        return supply(() -> delegate.queuePurchases(purchases)).thenCompose(saved -> saved);
+    }
+
+    @Override
+    public CompletableFuture<List<Purchase>> getPlayerPurchasesAsync(UUID playerUuid) {
+        return supply(() -> delegate.getPlayerPurchases(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<List<Purchase>> getActivePlayerPurchasesAsync(UUID playerUuid) {
+        return supply(() -> delegate.getActivePlayerPurchases(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Purchase> getPurchaseAsync(int id) {
+        return supply(() -> delegate.getPurchase(id));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deactivatePurchaseAsync(int id) {
+        return supply(() -> delegate.deactivatePurchase(id));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deactivateExpiredPurchasesAsync(long now) {
+        return supply(() -> delegate.deactivateExpiredPurchases(now));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updatePurchaseUsesAsync(int id, int remainingUses) {
+        return supply(() -> delegate.updatePurchaseUses(id, remainingUses));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flushAsync() {
+        return supply(delegate::flush);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAsync(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a storage operation on the I/O executor
+     *
+     * @param operation Operation to run
+     * @param <T> Result type
+     * @return Future with the result
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            // Executor is shutting down, run on the calling thread instead
+            return CompletableFuture.completedFuture(operation.get());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.models.Purchase;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage manager with asynchronous variants of its operations.
+ * Futures complete on a storage thread, so callers must switch to the main thread for Bukkit calls.
+ */
+public interface AsyncStorageManager extends StorageManager {
+
+    /**
+     * Saves a purchase to storage asynchronously
+     *
+     * @param purchase Purchase to save
+     * @return Future with the database ID of the purchase or -1 if failed
+     */
+    CompletableFuture<Integer> savePurchaseAsync(Purchase purchase);
+
+    /**
+     * Saves several purchases in one transaction asynchronously
+     *
+     * @param purchases Purchases to save
+     * @return Future with the database IDs in the order of the purchases, or an empty list if failed.
+     *         Fails if a queued write transaction with the purchases was rolled back.
+     */
+    CompletableFuture<List<Integer>> savePurchasesAsync(List<Purchase> purchases);
+
+    /**
+     * Gets all purchases for a player asynchronously
+     *
+     * @param playerUuid Player UUID
+     * @return Future with the list of purchases
+     */
+    CompletableFuture<List<Purchase>> getPlayerPurchasesAsync(UUID playerUuid);
+
+    /**
+     * Gets the active purchases for a player asynchronously
+     *
+     * @param playerUuid Player UUID
+     * @return Future with the list of active purchases
+     */
+    CompletableFuture<List<Purchase>> getActivePlayerPurchasesAsync(UUID playerUuid);
+
+    /**
+     * Gets a purchase by ID asynchronously
+     *
+     * @param id Purchase ID
+     * @return Future with the purchase or null if not found
+     */
+    CompletableFuture<Purchase> getPurchaseAsync(int id);
+
+    /**
+     * Deactivates a purchase asynchronously
+     *
+     * @param id Purchase ID
+     * @return Future with whether the operation was successful
+     */
+    CompletableFuture<Boolean> deactivatePurchaseAsync(int id);
+
+    /**
+     * Deactivates all active purchases that expired before the given time asynchronously
+     *
+     * @param now Current timestamp
+     * @return Future with the number of purchases deactivated
+     */
+    CompletableFuture<Integer> deactivateExpiredPurchasesAsync(long now);
+
+    /**
+     * Updates a purchase's remaining uses asynchronously
+     *
+     * @param id Purchase ID
+     * @param remainingUses Remaining uses
+     * @return Future with whether the operation was successful
+     */
+    CompletableFuture<Boolean> updatePurchaseUsesAsync(int id, int remainingUses);
+
+    /**
+     * Waits asynchronously until queued writes have been stored
+     *
+     * @return Future with whether the queued writes were stored
+     */
+    CompletableFuture<Boolean> flushAsync();
+
+    /**
+     * Runs a task on a storage thread, for file writes that must stay off the main thread
+     *
+     * @param task Task to run
+     * @return Future completed once the task ran
+     */
+    CompletableFuture<Void> runAsync(Runnable task);
+}
@@ -0,0 +1,31 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.models.Purchase;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interface for storages that can apply queued writes in a single transaction
+ */
+public interface BatchWriter {
+
+    /**
+     * Reserves the database ID for a purchase that has not been inserted yet
+     *
+     * @return Reserved purchase ID or -1 if IDs can only be assigned on insert
+     */
+    int reservePurchaseId();
+
+    /**
+     * Writes a batch of mutations in one transaction
+     *
+     * @param inserts Purchases to insert, with their reserved IDs
+     * @param remainingUses Remaining uses keyed by purchase ID
+     * @param deactivations Purchase IDs to deactivate
+     * @throws SQLException if the transaction failed and was rolled back
+     */
+    void writeBatch(List<Purchase> inserts, Map<Integer, Integer> remainingUses, Set<Integer> deactivations) throws SQLException;
+}
@@ -0,0 +1,153 @@
+package com.fusionslab.permissionshop.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of JDBC connections
+ */
+public class ConnectionPool {
+
+    /**
+     * Connections used more recently than this are handed out without a validity check
+     */
+    private static final long VALIDATION_WINDOW_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 3;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final long connectionTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new connection pool
+     *
+     * @param url JDBC URL
+     * @param username Database username
+     * @param password Database password
+     * @param maximumSize Maximum number of open connections
+     * @param connectionTimeoutMillis How long to wait for a free connection
+     * @param maxLifetimeMillis How long a connection is kept before it is replaced (0 for no limit)
+     */
+    public ConnectionPool(String url, String username, String password, int maximumSize,
+                          long connectionTimeoutMillis, long maxLifetimeMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.permits = new Semaphore(Math.max(1, maximumSize), true);
+    }
+
+    /**
+     * Opens connections until the given number are idle
+     *
+     * @param minimumIdle Number of connections to open
+     * @throws SQLException if a connection could not be opened
+     */
+    public void fill(int minimumIdle) throws SQLException {
+        int target = Math.min(minimumIdle, permits.availablePermits());
+
+        while (idle.size() < target) {
+            idle.addLast(new PooledConnection(this, open()));
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting up to the connection timeout for one to become free
+     *
+     * @return Connection to close when done
+     * @throws SQLException if no connection could be obtained
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + connectionTimeoutMillis + "ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isUsable(connection)) {
+                    return connection;
+                }
+                connection.closeQuietly();
+            }
+
+            return new PooledConnection(this, open());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool
+     *
+     * @param connection Connection to return
+     */
+    void release(PooledConnection connection) {
+        try {
+            if (closed || connection.getConnection().isClosed() || isExpired(connection)) {
+                connection.closeQuietly();
+            } else {
+                connection.touch();
+                idle.addFirst(connection);
+            }
+        } catch (SQLException e) {
+            connection.closeQuietly();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed when returned.
+     */
+    public void close() {
+        closed = true;
+
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    private Connection open() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    private boolean isExpired(PooledConnection connection) {
+        return maxLifetimeMillis > 0 && System.currentTimeMillis() - connection.getCreatedAt() > maxLifetimeMillis;
+    }
+
+    private boolean isUsable(PooledConnection connection) throws SQLException {
+        if (isExpired(connection)) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() - connection.getLastUsed() < VALIDATION_WINDOW_MILLIS) {
+            return true;
+        }
+
+        return connection.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+}
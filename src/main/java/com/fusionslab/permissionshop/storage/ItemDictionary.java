@@ -0,0 +1,149 @@
+package com.fusionslab.permissionshop.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the mapping between item IDs and their integer references in the items table.
+ * Parsed purchases share the cached item ID strings instead of allocating one per row.
+ * Items added inside a transaction are only cached once {@link #commit(Connection)} confirms it committed.
+ */
+public class ItemDictionary {
+
+    private final String insertSql;
+    private final Map<String, Integer> refs = new ConcurrentHashMap<>();
+    private final Map<Integer, String> itemIds = new ConcurrentHashMap<>();
+    private final Map<Connection, Map<String, Integer>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new item dictionary
+     *
+     * @param insertSql Statement that inserts an item_key unless it already exists
+     */
+    public ItemDictionary(String insertSql) {
+        this.insertSql = insertSql;
+    }
+
+    /**
+     * Loads all known items
+     *
+     * @param connection Connection to read from
+     * @throws SQLException if the items could not be read
+     */
+    public void load(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id, item_key FROM items");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                cache(resultSet.getInt(1), resultSet.getString(2));
+            }
+        }
+    }
+
+    /**
+     * Gets the reference for an item ID, adding the item to the items table if needed.
+     * If the connection is in a transaction, an added item stays pending until the transaction ends.
+     *
+     * @param connection Connection to use if the item is not cached
+     * @param itemId Item ID
+     * @return Item reference
+     * @throws SQLException if the item could not be added
+     */
+    public int getRef(Connection connection, String itemId) throws SQLException {
+        Integer ref = refs.get(itemId);
+        if (ref != null) {
+            return ref;
+        }
+
+        Map<String, Integer> added = connection.getAutoCommit() ? null : pending.get(connection);
+        if (added != null && (ref = added.get(itemId)) != null) {
+            return ref;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+            statement.setString(1, itemId);
+            statement.executeUpdate();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM items WHERE item_key = ?")) {
+            statement.setString(1, itemId);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Could not add item " + itemId + " to the items table");
+                }
+                ref = resultSet.getInt(1);
+            }
+        }
+
+        if (connection.getAutoCommit()) {
+            return cache(ref, itemId);
+        }
+
+        // The row disappears again if the transaction rolls back
+        pending.computeIfAbsent(connection, ignored -> new HashMap<>()).put(itemId, ref);
+        return ref;
+    }
+
+    /**
+     * Caches the items added in a transaction that has committed
+     *
+     * @param connection Connection the transaction ran on
+     */
+    public void commit(Connection connection) {
+        Map<String, Integer> added = pending.remove(connection);
+        if (added != null) {
+            added.forEach((itemId, ref) -> cache(ref, itemId));
+        }
+    }
+
+    /**
+     * Forgets the items added in a transaction that was rolled back
+     *
+     * @param connection Connection the transaction ran on
+     */
+    public void rollback(Connection connection) {
+        pending.remove(connection);
+    }
+
+    /**
+     * Gets the item ID for a reference
+     *
+     * @param connection Connection to use if the reference is not cached
+     * @param ref Item reference
+     * @return Item ID
+     * @throws SQLException if the reference is unknown
+     */
+    public String getItemId(Connection connection, int ref) throws SQLException {
+        String itemId = itemIds.get(ref);
+        if (itemId != null) {
+            return itemId;
+        }
+
+        // Added by another server sharing the database
+        try (PreparedStatement statement = connection.prepareStatement("SELECT item_key FROM items WHERE id = ?")) {
+            statement.setInt(1, ref);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Unknown item reference " + ref);
+                }
+                itemId = resultSet.getString(1);
+            }
+        }
+
+        cache(ref, itemId);
+        return itemId;
+    }
+
+    private int cache(int ref, String itemId) {
+        String interned = itemId.intern();
+        refs.put(interned, ref);
+        itemIds.put(ref, interned);
+        return ref;
+    }
+}
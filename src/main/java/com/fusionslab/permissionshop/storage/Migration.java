@@ -0,0 +1,82 @@
+package com.fusionslab.permissionshop.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A versioned change to the database schema
+ */
+public class Migration {
+
+    private final int version;
+    private final String description;
+    private final Step step;
+
+    /**
+     * Creates a new migration
+     *
+     * @param version Schema version this migration upgrades to
+     * @param description Short description of the change
+     * @param step Change to apply
+     */
+    public Migration(int version, String description, Step step) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    /**
+     * Creates a migration that executes SQL statements in order
+     *
+     * @param version Schema version this migration upgrades to
+     * @param description Short description of the change
+     * @param statements SQL statements to execute
+     * @return Migration
+     */
+    public static Migration of(int version, String description, String... statements) {
+        return new Migration(version, description, connection -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : statements) {
+                    statement.execute(sql);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the schema version
+     *
+     * @return Schema version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the description
+     *
+     * @return Description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Applies the migration
+     *
+     * @param connection Connection to apply the migration on
+     * @throws SQLException if the migration failed
+     */
+    public void apply(Connection connection) throws SQLException {
+        step.apply(connection);
+    }
+
+    /**
+     * Change applied by a migration
+     */
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,586 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.models.Purchase;
+import com.fusionslab.permissionshop.utils.UUIDUtils;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MySQL/MariaDB implementation of StorageManager
+ */
+public class MySQLStorage implements StorageManager, BatchWriter {
+
+    private static final String INSERT_PURCHASE = "INSERT INTO purchases (id, player_uuid, item_ref, purchase_time, expiration_time, remaining_uses, active) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_PLAYER_PURCHASES = "SELECT * FROM purchases WHERE player_uuid = ?";
+    private static final String SELECT_ACTIVE_PLAYER_PURCHASES = "SELECT * FROM purchases WHERE player_uuid = ? AND active = TRUE";
+    private static final String SELECT_PURCHASE = "SELECT * FROM purchases WHERE id = ?";
+    private static final String DEACTIVATE_PURCHASE = "UPDATE purchases SET active = FALSE WHERE id = ?";
+    private static final String DEACTIVATE_EXPIRED_PURCHASES = "UPDATE purchases SET active = FALSE WHERE active = TRUE AND expiration_time > 0 AND expiration_time <= ?";
+    private static final String UPDATE_PURCHASE_USES = "UPDATE purchases SET remaining_uses = ? WHERE id = ?";
+    private static final String SELECT_NEXT_ID = "SELECT next_id FROM purchase_ids WHERE id = 1 FOR UPDATE";
+    private static final String UPDATE_NEXT_ID = "UPDATE purchase_ids SET next_id = ? WHERE id = 1";
+
+    /**
+     * Number of purchase IDs a server reserves at once
+     */
+    private static final int ID_BLOCK_SIZE = 50;
+
+    /**
+     * Schema migrations, in version order.
+     * MySQL commits DDL implicitly, so every step checks whether it was already applied by an earlier, failed attempt.
+     */
+    private static final List<Migration> MIGRATIONS = List.of(
+            Migration.of(1, "Create purchases table",
+                    "CREATE TABLE IF NOT EXISTS purchases (" +
+                            "id INT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
+                            "player_uuid VARCHAR(36) NOT NULL," +
+                            "item_id VARCHAR(64) NOT NULL," +
+                            "purchase_time BIGINT NOT NULL," +
+                            "expiration_time BIGINT NOT NULL," +
+                            "remaining_uses INT NOT NULL," +
+                            "active BOOLEAN NOT NULL," +
+                            "INDEX idx_player_uuid (player_uuid)" +
+                            ")"),
+            new Migration(2, "Add composite indexes for active purchase lookups", connection -> {
+                SchemaInfo schema = new SchemaInfo(connection);
+                createIndex(connection, schema, "idx_purchases_player_active", "player_uuid, active");
+                createIndex(connection, schema, "idx_purchases_active_expiration", "active, expiration_time");
+                createIndex(connection, schema, "idx_purchases_item", "item_id");
+                // Covered by the (player_uuid, active) index
+                dropIndex(connection, schema, "idx_player_uuid");
+            }),
+            new Migration(3, "Store player UUIDs as bytes and item IDs as references to an items table",
+                    MySQLStorage::migrateCompactFormat),
+            Migration.of(4, "Reserve purchase IDs in blocks shared by all servers",
+                    "CREATE TABLE IF NOT EXISTS purchase_ids (" +
+                            "id INT NOT NULL PRIMARY KEY," +
+                            "next_id INT NOT NULL" +
+                            ")",
+                    "INSERT INTO purchase_ids (id, next_id) " +
+                            "SELECT 1, COALESCE(MAX(id), 0) + 1 FROM purchases " +
+                            "WHERE NOT EXISTS (SELECT 1 FROM purchase_ids WHERE id = 1)")
+    );
+
+    private final PermissionsShop plugin;
+    private final Logger logger;
+    private final ItemDictionary items = new ItemDictionary("INSERT IGNORE INTO items (item_key) VALUES (?)");
+    private final Object idLock = new Object();
+    private int nextId;
+    private int idBlockEnd;
+    private ConnectionPool pool;
+
+    public MySQLStorage(PermissionsShop plugin) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        initialize();
+    }
+
+    /**
+     * Creates a MySQL storage on an existing connection pool
+     *
+     * @param logger Logger for database errors
+     * @param pool Connection pool to use
+     */
+    public MySQLStorage(Logger logger, ConnectionPool pool) {
+        this.plugin = null;
+        this.logger = logger;
+        this.pool = pool;
+        createTables();
+    }
+
+    @Override
+    public void initialize() {
+        if (plugin == null) {
+            // Created on an existing pool
+            createTables();
+            return;
+        }
+
+        ConfigurationSection mysql = plugin.getConfig().getConfigurationSection("storage.mysql");
+        if (mysql == null) {
+            logger.severe("Missing storage.mysql section in config.yml");
+            return;
+        }
+
+        String url = "jdbc:mysql://" + mysql.getString("host", "localhost") + ":" + mysql.getInt("port", 3306) +
+                "/" + mysql.getString("database", "permissionshop") + mysql.getString("options", "");
+
+        try {
+            loadDriver();
+
+            pool = new ConnectionPool(
+                    url,
+                    mysql.getString("username", "root"),
+                    mysql.getString("password", ""),
+                    mysql.getInt("pool.maximum_size", 10),
+                    mysql.getLong("pool.connection_timeout", 5000),
+                    mysql.getLong("pool.max_lifetime", 1800000)
+            );
+            pool.fill(mysql.getInt("pool.minimum_idle", 2));
+
+            // Create tables
+            createTables();
+        } catch (ClassNotFoundException | SQLException e) {
+            logger.log(Level.SEVERE, "Could not initialize MySQL database", e);
+        }
+    }
+
+    /**
+     * Loads the MySQL JDBC driver bundled with the server
+     *
+     * @throws ClassNotFoundException if no driver is available
+     */
+    private void loadDriver() throws ClassNotFoundException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            // Older servers bundle the legacy driver
+            Class.forName("com.mysql.jdbc.Driver");
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool
+     *
+     * @return Pooled connection
+     * @throws SQLException if the pool is unavailable or exhausted
+     */
+    private PooledConnection borrow() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("MySQL connection pool was not initialized");
+        }
+        return pool.borrow();
+    }
+
+    @Override
+    public void closeConnection() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Creates or upgrades the database schema
+     */
+    private void createTables() {
+        try (PooledConnection connection = borrow()) {
+            new SchemaMigrator(logger, connection.getConnection()).migrate(MIGRATIONS);
+            items.load(connection.getConnection());
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not create tables", e);
+        }
+    }
+
+    /**
+     * Converts player UUIDs to bytes and item IDs to references to the items table.
+     * Each step is skipped if an earlier attempt already applied it.
+     *
+     * @param connection Connection to migrate
+     * @throws SQLException if the migration failed
+     */
+    private static void migrateCompactFormat(Connection connection) throws SQLException {
+        SchemaInfo schema = new SchemaInfo(connection);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(
+                    "CREATE TABLE IF NOT EXISTS items (" +
+                            "id INT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
+                            "item_key VARCHAR(64) NOT NULL," +
+                            "CONSTRAINT uk_items_item_key UNIQUE (item_key)" +
+                            ")"
+            );
+
+            if (schema.isTextColumn("purchases", "player_uuid")) {
+                if (!schema.hasColumn("purchases", "player_uuid_bin")) {
+                    statement.execute("ALTER TABLE purchases ADD COLUMN player_uuid_bin BINARY(16) NULL AFTER player_uuid");
+                }
+                convertPlayerUuids(connection);
+                dropIndex(connection, schema, "idx_purchases_player_active");
+                statement.execute("ALTER TABLE purchases DROP COLUMN player_uuid");
+            }
+            if (schema.hasColumn("purchases", "player_uuid_bin")) {
+                statement.execute("ALTER TABLE purchases CHANGE player_uuid_bin player_uuid BINARY(16) NOT NULL");
+            }
+
+            if (schema.hasColumn("purchases", "item_id")) {
+                if (!schema.hasColumn("purchases", "item_ref")) {
+                    statement.execute("ALTER TABLE purchases ADD COLUMN item_ref INT NULL AFTER item_id");
+                }
+                statement.execute("INSERT INTO items (item_key) SELECT DISTINCT p.item_id FROM purchases p " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM items i WHERE i.item_key = p.item_id)");
+                statement.execute("UPDATE purchases SET item_ref = " +
+                        "(SELECT i.id FROM items i WHERE i.item_key = purchases.item_id) WHERE item_ref IS NULL");
+                dropIndex(connection, schema, "idx_purchases_item");
+                statement.execute("ALTER TABLE purchases DROP COLUMN item_id");
+            }
+            statement.execute("ALTER TABLE purchases MODIFY item_ref INT NOT NULL");
+        }
+
+        createIndex(connection, schema, "idx_purchases_player_active", "player_uuid, active");
+        createIndex(connection, schema, "idx_purchases_item", "item_ref");
+    }
+
+    /**
+     * Fills player_uuid_bin from the textual player_uuid of rows that were not converted yet
+     *
+     * @param connection Connection to migrate
+     * @throws SQLException if a row could not be converted
+     */
+    private static void convertPlayerUuids(Connection connection) throws SQLException {
+        String select = "SELECT id, player_uuid FROM purchases WHERE player_uuid_bin IS NULL";
+        String update = "UPDATE purchases SET player_uuid_bin = ? WHERE id = ?";
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(select);
+             PreparedStatement updateStatement = connection.prepareStatement(update)) {
+            int batched = 0;
+
+            while (resultSet.next()) {
+                String playerUuid = resultSet.getString(2);
+                try {
+                    updateStatement.setBytes(1, UUIDUtils.toBytes(UUID.fromString(playerUuid)));
+                } catch (IllegalArgumentException e) {
+                    throw new SQLException("Purchase " + resultSet.getInt(1) + " has an invalid player UUID: " + playerUuid, e);
+                }
+                updateStatement.setInt(2, resultSet.getInt(1));
+                updateStatement.addBatch();
+
+                if (++batched % 1000 == 0) {
+                    updateStatement.executeBatch();
+                }
+            }
+
+            updateStatement.executeBatch();
+        }
+    }
+
+    /**
+     * Creates an index on the purchases table unless it exists
+     */
+    private static void createIndex(Connection connection, SchemaInfo schema, String index, String columns) throws SQLException {
+        if (schema.hasIndex("purchases", index)) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX " + index + " ON purchases (" + columns + ")");
+        }
+    }
+
+    /**
+     * Drops an index from the purchases table if it exists
+     */
+    private static void dropIndex(Connection connection, SchemaInfo schema, String index) throws SQLException {
+        if (!schema.hasIndex("purchases", index)) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP INDEX " + index + " ON purchases");
+        }
+    }
+
+    /**
+     * Reserves a purchase ID from this server's current block, reserving a new block when it is used up.
+     * Blocks come from the shared purchase_ids table, so servers sharing the database never hand out the same ID.
+     * IDs left in a block when the server stops are skipped.
+     */
+    @Override
+    public int reservePurchaseId() {
+        try {
+            return nextPurchaseId();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not reserve a purchase ID", e);
+            return -1;
+        }
+    }
+
+    private int nextPurchaseId() throws SQLException {
+        synchronized (idLock) {
+            if (nextId >= idBlockEnd) {
+                nextId = reserveIdBlock();
+                idBlockEnd = nextId + ID_BLOCK_SIZE;
+            }
+            return nextId++;
+        }
+    }
+
+    /**
+     * Takes the next block of IDs from the purchase_ids table
+     *
+     * @return First ID of the block
+     * @throws SQLException if the block could not be reserved
+     */
+    private int reserveIdBlock() throws SQLException {
+        try (PooledConnection pooled = borrow()) {
+            Connection connection = pooled.getConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                int first;
+                try (ResultSet resultSet = pooled.prepare(SELECT_NEXT_ID).executeQuery()) {
+                    if (!resultSet.next()) {
+                        throw new SQLException("The purchase_ids table is empty");
+                    }
+                    first = resultSet.getInt(1);
+                }
+
+                PreparedStatement statement = pooled.prepare(UPDATE_NEXT_ID);
+                statement.setInt(1, first + ID_BLOCK_SIZE);
+                statement.executeUpdate();
+
+                connection.commit();
+                return first;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    @Override
+    public void writeBatch(List<Purchase> inserts, Map<Integer, Integer> remainingUses, Set<Integer> deactivations) throws SQLException {
+        try (PooledConnection pooled = borrow()) {
+            Connection connection = pooled.getConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                if (!inserts.isEmpty()) {
+                    PreparedStatement statement = pooled.prepare(INSERT_PURCHASE);
+                    for (Purchase purchase : inserts) {
+                        addInsert(statement, connection, purchase.getId(), purchase);
+                    }
+                    statement.executeBatch();
+                }
+
+                if (!remainingUses.isEmpty()) {
+                    PreparedStatement statement = pooled.prepare(UPDATE_PURCHASE_USES);
+                    for (Map.Entry<Integer, Integer> entry : remainingUses.entrySet()) {
+                        statement.setInt(1, entry.getValue());
+                        statement.setInt(2, entry.getKey());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+
+                if (!deactivations.isEmpty()) {
+                    PreparedStatement statement = pooled.prepare(DEACTIVATE_PURCHASE);
+                    for (int id : deactivations) {
+                        statement.setInt(1, id);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+
+                connection.commit();
+                items.commit(connection);
+            } catch (SQLException e) {
+                items.rollback(connection);
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    @Override
+    public int savePurchase(Purchase purchase) {
+        List<Integer> ids = savePurchases(List.of(purchase));
+        return ids.isEmpty() ? -1 : ids.get(0);
+    }
+
+    @Override
+    public List<Integer> savePurchases(List<Purchase> purchases) {
+        List<Integer> ids = new ArrayList<>(purchases.size());
+
+        try {
+            // Reserved before borrowing, a new block needs a connection of its own. A rollback only leaves a gap.
+            for (int i = 0; i < purchases.size(); i++) {
+                ids.add(nextPurchaseId());
+            }
+
+            try (PooledConnection pooled = borrow()) {
+                Connection connection = pooled.getConnection();
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+
+                try {
+                    PreparedStatement statement = pooled.prepare(INSERT_PURCHASE);
+                    for (int i = 0; i < purchases.size(); i++) {
+                        addInsert(statement, connection, ids.get(i), purchases.get(i));
+                    }
+                    statement.executeBatch();
+
+                    connection.commit();
+                    items.commit(connection);
+                } catch (SQLException e) {
+                    items.rollback(connection);
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not save purchases", e);
+            return new ArrayList<>();
+        }
+
+        return ids;
+    }
+
+    /**
+     * Adds a purchase to a batch of INSERT_PURCHASE statements
+     *
+     * @param statement Prepared INSERT_PURCHASE statement
+     * @param connection Connection to add new items on
+     * @param id Reserved purchase ID
+     * @param purchase Purchase to insert
+     * @throws SQLException if the item could not be added
+     */
+    private void addInsert(PreparedStatement statement, Connection connection, int id, Purchase purchase) throws SQLException {
+        statement.setInt(1, id);
+        statement.setBytes(2, UUIDUtils.toBytes(purchase.getPlayerUuid()));
+        statement.setInt(3, items.getRef(connection, purchase.getItemId()));
+        statement.setLong(4, purchase.getPurchaseTime());
+        statement.setLong(5, purchase.getExpirationTime());
+        statement.setInt(6, purchase.getRemainingUses());
+        statement.setBoolean(7, purchase.isActive());
+        statement.addBatch();
+    }
+
+    @Override
+    public List<Purchase> getPlayerPurchases(UUID playerUuid) {
+        List<Purchase> purchases = new ArrayList<>();
+
+        try (PooledConnection connection = borrow()) {
+            PreparedStatement statement = connection.prepare(SELECT_PLAYER_PURCHASES);
+            statement.setBytes(1, UUIDUtils.toBytes(playerUuid));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    purchases.add(parsePurchase(connection, resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not get player purchases", e);
+        }
+
+        return purchases;
+    }
+
+    @Override
+    public List<Purchase> getActivePlayerPurchases(UUID playerUuid) {
+        List<Purchase> purchases = new ArrayList<>();
+
+        try (PooledConnection connection = borrow()) {
+            PreparedStatement statement = connection.prepare(SELECT_ACTIVE_PLAYER_PURCHASES);
+            statement.setBytes(1, UUIDUtils.toBytes(playerUuid));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    purchases.add(parsePurchase(connection, resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not get active player purchases", e);
+        }
+
+        return purchases;
+    }
+
+    @Override
+    public Purchase getPurchase(int id) {
+        try (PooledConnection connection = borrow()) {
+            PreparedStatement statement = connection.prepare(SELECT_PURCHASE);
+            statement.setInt(1, id);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return parsePurchase(connection, resultSet);
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not get purchase", e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean deactivatePurchase(int id) {
+        try (PooledConnection connection = borrow()) {
+            PreparedStatement statement = connection.prepare(DEACTIVATE_PURCHASE);
+            statement.setInt(1, id);
+
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not deactivate purchase", e);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int deactivateExpiredPurchases(long now) {
+        try (PooledConnection connection = borrow()) {
+            PreparedStatement statement = connection.prepare(DEACTIVATE_EXPIRED_PURCHASES);
+            statement.setLong(1, now);
+
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not deactivate expired purchases", e);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public boolean updatePurchaseUses(int id, int remainingUses) {
+        try (PooledConnection connection = borrow()) {
+            PreparedStatement statement = connection.prepare(UPDATE_PURCHASE_USES);
+            statement.setInt(1, remainingUses);
+            statement.setInt(2, id);
+
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not update purchase uses", e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses a purchase from a ResultSet
+     *
+     * @param connection Connection the ResultSet belongs to
+     * @param resultSet ResultSet to parse
+     * @return Parsed Purchase
+     * @throws SQLException if an error occurs
+     */
+    private Purchase parsePurchase(PooledConnection connection, ResultSet resultSet) throws SQLException {
+        int id = resultSet.getInt("id");
+        UUID playerUuid = UUIDUtils.fromBytes(resultSet.getBytes("player_uuid"));
+        String itemId = items.getItemId(connection.getConnection(), resultSet.getInt("item_ref"));
+        long purchaseTime = resultSet.getLong("purchase_time");
+        long expirationTime = resultSet.getLong("expiration_time");
+        int remainingUses = resultSet.getInt("remaining_uses");
+        boolean active = resultSet.getBoolean("active");
+
+        return new Purchase(id, playerUuid, itemId, purchaseTime, expirationTime, remainingUses, active);
+    }
+}
@@ -2,20 +2,53 @@ package com.fusionslab.permissionshop.storage;
 
 import com.fusionslab.permissionshop.PermissionsShop;
 import com.fusionslab.permissionshop.models.Purchase;
+import com.fusionslab.permissionshop.utils.UUIDUtils;
 
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
- * SQLite implementation of StorageManager
+ * SQLite implementation of StorageManager.
+ * All operations share one connection and hold the storage's lock, so the I/O threads and the
+ * write-behind writer never interleave statements or transactions on it.
  */
-public class SQLiteStorage implements StorageManager {
+public class SQLiteStorage implements StorageManager, BatchWriter {
+
+    /**
+     * Schema migrations, in version order
+     */
+    private static final List<Migration> MIGRATIONS = List.of(
+            Migration.of(1, "Create purchases table",
+                    "CREATE TABLE IF NOT EXISTS purchases (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "player_uuid VARCHAR(36) NOT NULL," +
+                            "item_id VARCHAR(64) NOT NULL," +
+                            "purchase_time BIGINT NOT NULL," +
+                            "expiration_time BIGINT NOT NULL," +
+                            "remaining_uses INT NOT NULL," +
+                            "active BOOLEAN NOT NULL" +
+                            ");",
+                    "CREATE INDEX IF NOT EXISTS idx_player_uuid ON purchases (player_uuid);"),
+            Migration.of(2, "Add composite indexes for active purchase lookups",
+                    "CREATE INDEX IF NOT EXISTS idx_purchases_player_active ON purchases (player_uuid, active);",
+                    "CREATE INDEX IF NOT EXISTS idx_purchases_active_expiration ON purchases (active, expiration_time);",
+                    "CREATE INDEX IF NOT EXISTS idx_purchases_item ON purchases (item_id);",
+                    // Covered by the (player_uuid, active) index
+                    "DROP INDEX IF EXISTS idx_player_uuid;"),
+            new Migration(3, "Store player UUIDs as bytes and item IDs as references to an items table",
+                    SQLiteStorage::migrateCompactFormat)
+    );
 
     private final PermissionsShop plugin;
+    private final AtomicInteger lastPurchaseId = new AtomicInteger();
+    private final ItemDictionary items = new ItemDictionary("INSERT OR IGNORE INTO items (item_key) VALUES (?);");
     private Connection connection;
 
     public SQLiteStorage(PermissionsShop plugin) {
@@ -24,7 +57,7 @@ public class SQLiteStorage implements StorageManager {
     }
 
     @Override
-    public void initialize() {
+    public synchronized void initialize() {
         try {
             // Create database directory if it doesn't exist
             File dataFolder = new File(plugin.getDataFolder(), "data");
@@ -40,13 +73,17 @@ public class SQLiteStorage implements StorageManager {
 
             // Create tables
             createTables();
+            items.load(connection);
+
+            // Continue reserved IDs after the highest one in use
+            loadLastPurchaseId();
         } catch (ClassNotFoundException | SQLException e) {
             plugin.getLogger().log(Level.SEVERE, "Could not initialize SQLite database", e);
         }
     }
 
     @Override
-    public void closeConnection() {
+    public synchronized void closeConnection() {
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -57,39 +94,167 @@ public class SQLiteStorage implements StorageManager {
     }
 
     /**
-     * Creates database tables
+     * Creates or upgrades the database schema
      */
     private void createTables() {
+        try {
+            new SchemaMigrator(plugin.getLogger(), connection).migrate(MIGRATIONS);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not create tables", e);
+        }
+    }
+
+    /**
+     * Rebuilds the purchases table with binary player UUIDs and item references.
+     * SQLite cannot convert UUID text to bytes in SQL, so rows are copied here.
+     *
+     * @param connection Connection to migrate
+     * @throws SQLException if the migration failed
+     */
+    private static void migrateCompactFormat(Connection connection) throws SQLException {
         try (Statement statement = connection.createStatement()) {
-            // Create purchases table
             statement.execute(
-                    "CREATE TABLE IF NOT EXISTS purchases (" +
+                    "CREATE TABLE items (" +
                             "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "player_uuid VARCHAR(36) NOT NULL," +
-                            "item_id VARCHAR(64) NOT NULL," +
+                            "item_key VARCHAR(64) NOT NULL UNIQUE" +
+                            ");"
+            );
+            statement.execute("INSERT INTO items (item_key) SELECT DISTINCT item_id FROM purchases;");
+            statement.execute(
+                    "CREATE TABLE purchases_compact (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "player_uuid BLOB NOT NULL," +
+                            "item_ref INTEGER NOT NULL REFERENCES items (id)," +
                             "purchase_time BIGINT NOT NULL," +
                             "expiration_time BIGINT NOT NULL," +
                             "remaining_uses INT NOT NULL," +
                             "active BOOLEAN NOT NULL" +
                             ");"
             );
+        }
 
-            // Create index for player_uuid
-            statement.execute(
-                    "CREATE INDEX IF NOT EXISTS idx_player_uuid ON purchases (player_uuid);"
-            );
+        String select = "SELECT p.id, p.player_uuid, i.id, p.purchase_time, p.expiration_time, p.remaining_uses, p.active " +
+                "FROM purchases p JOIN items i ON i.item_key = p.item_id;";
+        String insert = "INSERT INTO purchases_compact (id, player_uuid, item_ref, purchase_time, expiration_time, remaining_uses, active) VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(select);
+             PreparedStatement insertStatement = connection.prepareStatement(insert)) {
+            int batched = 0;
+
+            while (resultSet.next()) {
+                insertStatement.setInt(1, resultSet.getInt(1));
+                insertStatement.setBytes(2, UUIDUtils.toBytes(UUID.fromString(resultSet.getString(2))));
+                insertStatement.setInt(3, resultSet.getInt(3));
+                insertStatement.setLong(4, resultSet.getLong(4));
+                insertStatement.setLong(5, resultSet.getLong(5));
+                insertStatement.setInt(6, resultSet.getInt(6));
+                insertStatement.setBoolean(7, resultSet.getBoolean(7));
+                insertStatement.addBatch();
+
+                if (++batched % 1000 == 0) {
+                    insertStatement.executeBatch();
+                }
+            }
+
+            insertStatement.executeBatch();
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE purchases;");
+            statement.execute("ALTER TABLE purchases_compact RENAME TO purchases;");
+            statement.execute("CREATE INDEX idx_purchases_player_active ON purchases (player_uuid, active);");
+            statement.execute("CREATE INDEX idx_purchases_active_expiration ON purchases (active, expiration_time);");
+            statement.execute("CREATE INDEX idx_purchases_item ON purchases (item_ref);");
+        }
+    }
+
+    /**
+     * Loads the highest purchase ID for reserving new IDs
+     */
+    private void loadLastPurchaseId() {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(id) FROM purchases;")) {
+            if (resultSet.next()) {
+                lastPurchaseId.set(resultSet.getInt(1));
+            }
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Could not create tables", e);
+            plugin.getLogger().log(Level.SEVERE, "Could not load last purchase ID", e);
+        }
+    }
+
+    @Override
+    public int reservePurchaseId() {
+        return lastPurchaseId.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void writeBatch(List<Purchase> inserts, Map<Integer, Integer> remainingUses, Set<Integer> deactivations) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try {
+            if (!inserts.isEmpty()) {
+                String sql = "INSERT INTO purchases (id, player_uuid, item_ref, purchase_time, expiration_time, remaining_uses, active) VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Purchase purchase : inserts) {
+                        statement.setInt(1, purchase.getId());
+                        statement.setBytes(2, UUIDUtils.toBytes(purchase.getPlayerUuid()));
+                        statement.setInt(3, items.getRef(connection, purchase.getItemId()));
+                        statement.setLong(4, purchase.getPurchaseTime());
+                        statement.setLong(5, purchase.getExpirationTime());
+                        statement.setInt(6, purchase.getRemainingUses());
+                        statement.setBoolean(7, purchase.isActive());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+
+            if (!remainingUses.isEmpty()) {
+                String sql = "UPDATE purchases SET remaining_uses = ? WHERE id = ?;";
+
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Map.Entry<Integer, Integer> entry : remainingUses.entrySet()) {
+                        statement.setInt(1, entry.getValue());
+                        statement.setInt(2, entry.getKey());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+
+            if (!deactivations.isEmpty()) {
+                String sql = "UPDATE purchases SET active = FALSE WHERE id = ?;";
+
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (int id : deactivations) {
+                        statement.setInt(1, id);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+
+            connection.commit();
+            items.commit(connection);
+        } catch (SQLException e) {
+            items.rollback(connection);
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
         }
     }
 
     @Override
-    public int savePurchase(Purchase purchase) {
-        String sql = "INSERT INTO purchases (player_uuid, item_id, purchase_time, expiration_time, remaining_uses, active) VALUES (?, ?, ?, ?, ?, ?);";
+    public synchronized int savePurchase(Purchase purchase) {
+        String sql = "INSERT INTO purchases (player_uuid, item_ref, purchase_time, expiration_time, remaining_uses, active) VALUES (?, ?, ?, ?, ?, ?);";
 
         try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            statement.setString(1, purchase.getPlayerUuid().toString());
-            statement.setString(2, purchase.getItemId());
+            statement.setBytes(1, UUIDUtils.toBytes(purchase.getPlayerUuid()));
+            statement.setInt(2, items.getRef(connection, purchase.getItemId()));
             statement.setLong(3, purchase.getPurchaseTime());
             statement.setLong(4, purchase.getExpirationTime());
             statement.setInt(5, purchase.getRemainingUses());
@@ -99,7 +264,9 @@ public class SQLiteStorage implements StorageManager {
 
             try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
+                    int id = generatedKeys.getInt(1);
+                    lastPurchaseId.accumulateAndGet(id, Math::max);
+                    return id;
                 }
             }
         } catch (SQLException e) {
@@ -110,12 +277,59 @@ public class SQLiteStorage implements StorageManager {
     }
 
     @Override
-    public List<Purchase> getPlayerPurchases(UUID playerUuid) {
+    public synchronized List<Integer> savePurchases(List<Purchase> purchases) {
+        String sql = "INSERT INTO purchases (player_uuid, item_ref, purchase_time, expiration_time, remaining_uses, active) VALUES (?, ?, ?, ?, ?, ?);";
+        List<Integer> ids = new ArrayList<>(purchases.size());
+
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (Purchase purchase : purchases) {
+                    statement.setBytes(1, UUIDUtils.toBytes(purchase.getPlayerUuid()));
+                    statement.setInt(2, items.getRef(connection, purchase.getItemId()));
+                    statement.setLong(3, purchase.getPurchaseTime());
+                    statement.setLong(4, purchase.getExpirationTime());
+                    statement.setInt(5, purchase.getRemainingUses());
+                    statement.setBoolean(6, purchase.isActive());
+                    statement.executeUpdate();
+
+                    try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("No ID generated for purchase of " + purchase.getItemId());
+                        }
+                        ids.add(generatedKeys.getInt(1));
+                    }
+                }
+
+                connection.commit();
+                items.commit(connection);
+            } catch (SQLException e) {
+                items.rollback(connection);
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not save purchases", e);
+            return new ArrayList<>();
+        }
+
+        for (int id : ids) {
+            lastPurchaseId.accumulateAndGet(id, Math::max);
+        }
+        return ids;
+    }
+
+    @Override
+    public synchronized List<Purchase> getPlayerPurchases(UUID playerUuid) {
         List<Purchase> purchases = new ArrayList<>();
         String sql = "SELECT * FROM purchases WHERE player_uuid = ?;";
 
         try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, playerUuid.toString());
+            statement.setBytes(1, UUIDUtils.toBytes(playerUuid));
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
@@ -130,7 +344,27 @@ public class SQLiteStorage implements StorageManager {
     }
 
     @Override
-    public Purchase getPurchase(int id) {
+    public synchronized List<Purchase> getActivePlayerPurchases(UUID playerUuid) {
+        List<Purchase> purchases = new ArrayList<>();
+        String sql = "SELECT * FROM purchases WHERE player_uuid = ? AND active = TRUE;";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setBytes(1, UUIDUtils.toBytes(playerUuid));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    purchases.add(parsePurchase(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not get active player purchases", e);
+        }
+
+        return purchases;
+    }
+
+    @Override
+    public synchronized Purchase getPurchase(int id) {
         String sql = "SELECT * FROM purchases WHERE id = ?;";
 
         try (PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -149,7 +383,7 @@ public class SQLiteStorage implements StorageManager {
     }
 
     @Override
-    public boolean deactivatePurchase(int id) {
+    public synchronized boolean deactivatePurchase(int id) {
         String sql = "UPDATE purchases SET active = FALSE WHERE id = ?;";
 
         try (PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -164,7 +398,22 @@ public class SQLiteStorage implements StorageManager {
     }
 
     @Override
-    public boolean updatePurchaseUses(int id, int remainingUses) {
+    public synchronized int deactivateExpiredPurchases(long now) {
+        String sql = "UPDATE purchases SET active = FALSE WHERE active = TRUE AND expiration_time > 0 AND expiration_time <= ?;";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, now);
+
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not deactivate expired purchases", e);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public synchronized boolean updatePurchaseUses(int id, int remainingUses) {
         String sql = "UPDATE purchases SET remaining_uses = ? WHERE id = ?;";
 
         try (PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -188,8 +437,8 @@ public class SQLiteStorage implements StorageManager {
      */
     private Purchase parsePurchase(ResultSet resultSet) throws SQLException {
         int id = resultSet.getInt("id");
-        UUID playerUuid = UUID.fromString(resultSet.getString("player_uuid"));
-        String itemId = resultSet.getString("item_id");
+        UUID playerUuid = UUIDUtils.fromBytes(resultSet.getBytes("player_uuid"));
+        String itemId = items.getItemId(connection, resultSet.getInt("item_ref"));
         long purchaseTime = resultSet.getLong("purchase_time");
         long expirationTime = resultSet.getLong("expiration_time");
         int remainingUses = resultSet.getInt("remaining_uses");
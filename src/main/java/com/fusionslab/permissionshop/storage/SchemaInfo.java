@@ -0,0 +1,79 @@
+package com.fusionslab.permissionshop.storage;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Reads the current schema through JDBC metadata, so migrations can skip steps that were already applied
+ */
+public class SchemaInfo {
+
+    private final DatabaseMetaData metaData;
+    private final String catalog;
+
+    /**
+     * Creates a schema reader for the connection's current database
+     *
+     * @param connection Connection to read from
+     * @throws SQLException if the metadata is unavailable
+     */
+    public SchemaInfo(Connection connection) throws SQLException {
+        this.metaData = connection.getMetaData();
+        this.catalog = connection.getCatalog();
+    }
+
+    /**
+     * Checks whether a table has a column
+     *
+     * @param table Table name
+     * @param column Column name
+     * @return True if the column exists
+     * @throws SQLException if the metadata could not be read
+     */
+    public boolean hasColumn(String table, String column) throws SQLException {
+        try (ResultSet resultSet = metaData.getColumns(catalog, null, table, column)) {
+            return resultSet.next();
+        }
+    }
+
+    /**
+     * Checks whether a column exists and stores text
+     *
+     * @param table Table name
+     * @param column Column name
+     * @return True if the column is a CHAR or VARCHAR column
+     * @throws SQLException if the metadata could not be read
+     */
+    public boolean isTextColumn(String table, String column) throws SQLException {
+        try (ResultSet resultSet = metaData.getColumns(catalog, null, table, column)) {
+            if (!resultSet.next()) {
+                return false;
+            }
+
+            int type = resultSet.getInt("DATA_TYPE");
+            return type == Types.VARCHAR || type == Types.CHAR;
+        }
+    }
+
+    /**
+     * Checks whether a table has an index
+     *
+     * @param table Table name
+     * @param index Index name
+     * @return True if the index exists
+     * @throws SQLException if the metadata could not be read
+     */
+    public boolean hasIndex(String table, String index) throws SQLException {
+        try (ResultSet resultSet = metaData.getIndexInfo(catalog, null, table, false, true)) {
+            while (resultSet.next()) {
+                if (index.equalsIgnoreCase(resultSet.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package com.fusionslab.permissionshop.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Applies pending migrations in version order and records them in the schema_version table
+ */
+public class SchemaMigrator {
+
+    private final Logger logger;
+    private final Connection connection;
+
+    public SchemaMigrator(Logger logger, Connection connection) {
+        this.logger = logger;
+        this.connection = connection;
+    }
+
+    /**
+     * Applies every migration newer than the current schema version.
+     * Each migration runs in its own transaction where the database supports transactional DDL.
+     * Where it doesn't, a failed migration is retried on the next start and has to skip the steps it already applied.
+     *
+     * @param migrations Available migrations
+     * @throws SQLException if a migration failed, later migrations are not applied
+     */
+    public void migrate(List<Migration> migrations) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(
+                    "CREATE TABLE IF NOT EXISTS schema_version (" +
+                            "version INT NOT NULL PRIMARY KEY," +
+                            "description VARCHAR(255) NOT NULL," +
+                            "applied_at BIGINT NOT NULL" +
+                            ")"
+            );
+        }
+
+        int currentVersion = getCurrentVersion();
+
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            if (migration.getVersion() > currentVersion) {
+                pending.add(migration);
+            }
+        }
+        pending.sort(Comparator.comparingInt(Migration::getVersion));
+
+        for (Migration migration : pending) {
+            apply(migration);
+            logger.info("Migrated database to version " + migration.getVersion() + ": " + migration.getDescription());
+        }
+    }
+
+    /**
+     * Gets the current schema version
+     *
+     * @return Current version or 0 if no migrations were applied
+     * @throws SQLException if the version could not be read
+     */
+    public int getCurrentVersion() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try {
+            migration.apply(connection);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                statement.setInt(1, migration.getVersion());
+                statement.setString(2, migration.getDescription());
+                statement.setLong(3, System.currentTimeMillis());
+                statement.executeUpdate();
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Migration to version " + migration.getVersion() + " failed", e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
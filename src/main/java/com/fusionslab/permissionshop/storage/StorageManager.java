@@ -4,6 +4,7 @@ import com.fusionslab.permissionshop.models.Purchase;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for storage managers
@@ -20,6 +21,15 @@ public interface StorageManager {
      */
     void closeConnection();
 
+    /**
+     * Blocks until all queued writes have reached storage
+     *
+     * @return Whether the queued writes were stored
+     */
+    default boolean flush() {
+        return true;
+    }
+
     /**
      * Saves a purchase to storage
      *
@@ -28,6 +38,25 @@ public interface StorageManager {
      */
     int savePurchase(Purchase purchase);
 
+    /**
+     * Saves several purchases in one transaction
+     *
+     * @param purchases Purchases to save
+     * @return Database IDs in the order of the purchases, or an empty list if failed and nothing was saved
+     */
+    List<Integer> savePurchases(List<Purchase> purchases);
+
+    /**
+     * Saves several purchases in one transaction, completing once they are stored.
+     * Storages that write on the calling thread have stored them when this returns.
+     *
+     * @param purchases Purchases to save
+     * @return Future with the database IDs in the order of the purchases, or an empty list if failed
+     */
+    default CompletableFuture<List<Integer>> queuePurchases(List<Purchase> purchases) {
+        return CompletableFuture.completedFuture(savePurchases(purchases));
+    }
+
     /**
      * Gets all purchases for a player
      *
@@ -36,6 +65,14 @@ public interface StorageManager {
      */
     List<Purchase> getPlayerPurchases(UUID playerUuid);
 
+    /**
+     * Gets the active purchases for a player
+     *
+     * @param playerUuid Player UUID
+     * @return List of active purchases
+     */
+    List<Purchase> getActivePlayerPurchases(UUID playerUuid);
+
     /**
      * Gets a purchase by ID
      *
@@ -52,6 +89,14 @@ public interface StorageManager {
      */
     boolean deactivatePurchase(int id);
 
+    /**
+     * Deactivates all active purchases that expired before the given time
+     *
+     * @param now Current timestamp
+     * @return Number of purchases deactivated
+     */
+    int deactivateExpiredPurchases(long now);
+
     /**
      * Updates a purchase's remaining uses
      *
@@ -0,0 +1,238 @@
+package com.fusionslab.permissionshop.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only local journal of remaining uses per purchase.
+ * Every use is appended before it is acknowledged, so a server crash between
+ * database flushes can't hand consumed uses back to the player.
+ * Records only survive an OS crash or power loss if the journal syncs them to disk.
+ */
+public class UseJournal implements AutoCloseable {
+
+    private static final int RECORD_SIZE = Integer.BYTES * 2;
+
+    private final File file;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final boolean sync;
+    private FileChannel channel;
+    private int generation;
+
+    /**
+     * Opens or creates a journal file
+     *
+     * @param file Journal file
+     * @param sync Whether every appended record is synced to disk
+     * @throws IOException if the file could not be opened
+     */
+    public UseJournal(File file, boolean sync) throws IOException {
+        this.file = file;
+        this.sync = sync;
+        open();
+
+        // Drop a record torn by a crash so new records stay aligned
+        long size = channel.size();
+        channel.truncate(size - size % RECORD_SIZE);
+        channel.position(channel.size());
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Reads the journal, ignoring a torn record at the end
+     *
+     * @return Lowest remaining uses recorded per purchase ID
+     * @throws IOException if the file could not be read
+     */
+    public synchronized Map<Integer, Integer> read() throws IOException {
+        Map<Integer, Integer> remainingUses = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+
+        channel.read(buffer, 0);
+        buffer.flip();
+
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int purchaseId = buffer.getInt();
+            int uses = buffer.getInt();
+
+            // Uses only ever go down, so the lowest value is the latest
+            remainingUses.merge(purchaseId, uses, Math::min);
+        }
+
+        return remainingUses;
+    }
+
+    /**
+     * Writes the journaled uses to storage, deactivating purchases without uses left.
+     * The journal is only emptied once the storage confirmed every record.
+     *
+     * @param storage Storage to write to
+     * @return Number of records replayed, or -1 if they could not be stored and are kept
+     * @throws IOException if the journal could not be read or emptied
+     */
+    public synchronized int replay(StorageManager storage) throws IOException {
+        Map<Integer, Integer> remainingUses = read();
+        if (remainingUses.isEmpty()) {
+            return 0;
+        }
+
+        boolean stored = true;
+        for (Map.Entry<Integer, Integer> entry : remainingUses.entrySet()) {
+            stored &= storage.updatePurchaseUses(entry.getKey(), entry.getValue());
+            if (entry.getValue() == 0) {
+                stored &= storage.deactivatePurchase(entry.getKey());
+            }
+        }
+        stored &= storage.flush();
+
+        if (!stored) {
+            return -1;
+        }
+
+        rewrite(Map.of());
+        return remainingUses.size();
+    }
+
+    /**
+     * Appends the remaining uses of a purchase
+     *
+     * @param purchaseId Purchase ID
+     * @param remainingUses Remaining uses
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void append(int purchaseId, int remainingUses) throws IOException {
+        write(purchaseId, remainingUses);
+
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Marks the end of the records written so far, for a later compaction
+     *
+     * @return Checkpoint at the end of the journal
+     * @throws IOException if the journal size could not be read
+     */
+    public synchronized Checkpoint checkpoint() throws IOException {
+        return new Checkpoint(generation, channel.size());
+    }
+
+    /**
+     * Replaces the records written before the checkpoint with the given ones,
+     * keeping the records appended since
+     *
+     * @param remainingUses Remaining uses per purchase ID that were not in the database at the checkpoint
+     * @param checkpoint Checkpoint the remaining uses were taken at
+     * @return Whether the journal was compacted, false if it was rewritten or closed since the checkpoint
+     * @throws IOException if the journal could not be rewritten
+     */
+    public synchronized boolean compact(Map<Integer, Integer> remainingUses, Checkpoint checkpoint) throws IOException {
+        if (channel == null || checkpoint.generation != generation) {
+            return false;
+        }
+
+        replace(remainingUses, checkpoint.position);
+        return true;
+    }
+
+    /**
+     * Replaces the journal contents with the given records
+     *
+     * @param remainingUses Remaining uses per purchase ID that are not yet in the database
+     * @throws IOException if the journal could not be rewritten
+     */
+    public synchronized void rewrite(Map<Integer, Integer> remainingUses) throws IOException {
+        replace(remainingUses, channel.size());
+    }
+
+    /**
+     * Writes the records to a new file and moves it over the journal, so a crash
+     * leaves either the old or the new journal and never loses a record
+     */
+    private void replace(Map<Integer, Integer> remainingUses, long keepFrom) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<Integer, Integer> entry : remainingUses.entrySet()) {
+                write(out, entry.getKey(), entry.getValue());
+            }
+
+            // Records appended after the checkpoint aren't part of the given ones
+            long position = keepFrom;
+            long end = channel.size();
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+
+            // Always synced, a lost rewrite would also lose the records it kept
+            out.force(false);
+        }
+
+        // Closed first, an open file can't be replaced on every platform
+        channel.close();
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            generation++;
+        } finally {
+            open();
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private void write(int purchaseId, int remainingUses) throws IOException {
+        write(channel, purchaseId, remainingUses);
+    }
+
+    private void write(FileChannel target, int purchaseId, int remainingUses) throws IOException {
+        record.clear();
+        record.putInt(purchaseId).putInt(remainingUses).flip();
+
+        while (record.hasRemaining()) {
+            target.write(record);
+        }
+    }
+
+    /**
+     * Gets the journal file
+     *
+     * @return Journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Position in a journal up to which its records were seen
+     */
+    public static final class Checkpoint {
+        private final int generation;
+        private final long position;
+
+        private Checkpoint(int generation, long position) {
+            this.generation = generation;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.PermissionsShop;
+import com.fusionslab.permissionshop.models.Purchase;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * StorageManager that queues purchase writes and applies them in batches on a dedicated writer thread
+ */
+public class WriteBehindStorage implements StorageManager {
+
+    private static final long FLUSH_TIMEOUT_SECONDS = 30;
+    private static final long RETRY_DELAY_SECONDS = 1;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int UNREACHABLE_PROBES = 2;
+
+    private final Logger logger;
+    private final StorageManager delegate;
+    private final BatchWriter batchWriter;
+    private final BlockingQueue<Consumer<Batch>> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, Integer> retryRemainingUses = new LinkedHashMap<>();
+    private final Set<Integer> retryDeactivations = new LinkedHashSet<>();
+    private final Map<Integer, Integer> useAttempts = new HashMap<>();
+    private final Map<Integer, Integer> deactivationAttempts = new HashMap<>();
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private volatile boolean running;
+    private volatile boolean flushRequested;
+    private Thread writerThread;
+
+    /**
+     * Creates a write-behind layer in front of an initialized storage
+     *
+     * @param plugin Plugin instance
+     * @param delegate Storage to write to
+     * @param <S> Storage type
+     */
+    public <S extends StorageManager & BatchWriter> WriteBehindStorage(PermissionsShop plugin, S delegate) {
+        this(plugin.getLogger(), delegate,
+                plugin.getConfig().getInt("storage.write_behind.batch_size", 500),
+                plugin.getConfig().getLong("storage.write_behind.flush_interval", 50));
+    }
+
+    /**
+     * Creates a write-behind layer in front of an initialized storage
+     *
+     * @param logger Logger for failed writes
+     * @param delegate Storage to write to
+     * @param batchSize Most queued writes per batch
+     * @param flushIntervalMillis How long to collect writes before a batch is written
+     * @param <S> Storage type
+     */
+    public <S extends StorageManager & BatchWriter> WriteBehindStorage(Logger logger, S delegate, int batchSize, long flushIntervalMillis) {
+        this.logger = logger;
+        this.delegate = delegate;
+        this.batchWriter = delegate;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+        initialize();
+    }
+
+    @Override
+    public void initialize() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "PermissionsShop-StorageWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void closeConnection() {
+        if (running) {
+            flush();
+            running = false;
+            writerThread.interrupt();
+
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(FLUSH_TIMEOUT_SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        delegate.closeConnection();
+    }
+
+    @Override
+    public boolean flush() {
+        if (!running) {
+            return true;
+        }
+
+        CompletableFuture<Void> barrier = new CompletableFuture<>();
+        flushRequested = true;
+        queue.add(batch -> batch.barriers.add(barrier));
+
+        try {
+            barrier.get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            logger.warning("Timed out waiting for " + queue.size() + " queued storage writes to flush");
+        } catch (ExecutionException e) {
+            // The writer already logged the failed batch
+        }
+        return false;
+    }
+
+    @Override
+    public int savePurchase(Purchase purchase) {
+        List<Integer> ids = savePurchases(List.of(purchase));
+        return ids.isEmpty() ? -1 : ids.get(0);
+    }
+
+    @Override
+    public List<Integer> savePurchases(List<Purchase> purchases) {
+        try {
+            return queuePurchases(purchases).join();
+        } catch (CompletionException e) {
+            return List.of();
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<Integer>> queuePurchases(List<Purchase> purchases) {
+        List<Integer> ids = new ArrayList<>(purchases.size());
+        List<Purchase> reserved = new ArrayList<>(purchases.size());
+
+        for (Purchase purchase : purchases) {
+            int id = running ? batchWriter.reservePurchaseId() : -1;
+
+            if (id == -1) {
+                // Storage assigns IDs on insert, so the caller has to wait for it
+                flush();
+                return CompletableFuture.completedFuture(delegate.savePurchases(purchases));
+            }
+
+            ids.add(id);
+            reserved.add(new Purchase(
+                    id,
+                    purchase.getPlayerUuid(),
+                    purchase.getItemId(),
+                    purchase.getPurchaseTime(),
+                    purchase.getExpirationTime(),
+                    purchase.getRemainingUses(),
+                    purchase.isActive()
+            ));
+        }
+
+        // Queued as one write so all purchases land in the same batch transaction,
+        // the IDs are only handed out once that transaction has committed
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        queue.add(batch -> {
+            batch.inserts.addAll(reserved);
+            batch.barriers.add(written);
+        });
+        return written.thenApply(ignored -> ids);
+    }
+
+    @Override
+    public List<Purchase> getPlayerPurchases(UUID playerUuid) {
+        flush();
+        return delegate.getPlayerPurchases(playerUuid);
+    }
+
+    @Override
+    public List<Purchase> getActivePlayerPurchases(UUID playerUuid) {
+        flush();
+        return delegate.getActivePlayerPurchases(playerUuid);
+    }
+
+    @Override
+    public Purchase getPurchase(int id) {
+        flush();
+        return delegate.getPurchase(id);
+    }
+
+    @Override
+    public boolean deactivatePurchase(int id) {
+        if (!running) {
+            return delegate.deactivatePurchase(id);
+        }
+
+        queue.add(batch -> batch.deactivations.add(id));
+        return true;
+    }
+
+    @Override
+    public int deactivateExpiredPurchases(long now) {
+        flush();
+        return delegate.deactivateExpiredPurchases(now);
+    }
+
+    @Override
+    public boolean updatePurchaseUses(int id, int remainingUses) {
+        if (!running) {
+            return delegate.updatePurchaseUses(id, remainingUses);
+        }
+
+        // Later updates for the same purchase replace earlier ones in the batch
+        queue.add(batch -> batch.remainingUses.put(id, remainingUses));
+        return true;
+    }
+
+    /**
+     * Drains the queue and writes each batch in a single transaction
+     */
+    private void runWriter() {
+        List<Consumer<Batch>> drained = new ArrayList<>();
+
+        while (running || !queue.isEmpty()) {
+            try {
+                // Failed writes are retried on their own after a delay if nothing new comes in
+                Consumer<Batch> first = queue.poll(RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+                if (first != null) {
+                    drained.add(first);
+                    collect(drained);
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by closeConnection, drain whatever is left
+                queue.drainTo(drained);
+            }
+
+            if (!drained.isEmpty() || hasRetries()) {
+                Batch batch = new Batch();
+
+                // Retried writes go first so newer queued values replace them
+                batch.remainingUses.putAll(retryRemainingUses);
+                batch.deactivations.addAll(retryDeactivations);
+                retryRemainingUses.clear();
+                retryDeactivations.clear();
+
+                for (Consumer<Batch> write : drained) {
+                    write.accept(batch);
+                }
+                drained.clear();
+
+                write(batch);
+            }
+        }
+
+        if (hasRetries()) {
+            logger.severe("Could not store " + (retryRemainingUses.size() + retryDeactivations.size())
+                    + " purchase updates before shutdown");
+        }
+    }
+
+    /**
+     * Collects further queued writes until the batch is full or the flush interval ends
+     *
+     * @param drained Writes collected so far
+     * @throws InterruptedException if the writer is interrupted while waiting
+     */
+    private void collect(List<Consumer<Batch>> drained) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        while (drained.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            Consumer<Batch> next = remaining > 0 && !flushRequested
+                    ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                    : queue.poll();
+
+            if (next == null) {
+                break;
+            }
+
+            drained.add(next);
+        }
+
+        flushRequested = false;
+    }
+
+    /**
+     * Writes a batch and releases any flushes waiting on it.
+     * If the transaction fails, the waiting flushes and inserts fail with it, while
+     * use updates and deactivations are written one at a time.
+     *
+     * @param batch Batch to write
+     */
+    private void write(Batch batch) {
+        if (batch.hasWrites()) {
+            try {
+                batchWriter.writeBatch(batch.inserts, batch.remainingUses, batch.deactivations);
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Could not write batch of " + batch.size() + " purchase updates", e);
+
+                // Before the flushes are released, so they return once the writes are settled
+                writeSeparately(batch);
+
+                for (CompletableFuture<Void> barrier : batch.barriers) {
+                    barrier.completeExceptionally(e);
+                }
+                return;
+            }
+
+            useAttempts.keySet().removeAll(batch.remainingUses.keySet());
+            deactivationAttempts.keySet().removeAll(batch.deactivations);
+        }
+
+        for (CompletableFuture<Void> barrier : batch.barriers) {
+            barrier.complete(null);
+        }
+    }
+
+    /**
+     * Writes the use updates and deactivations of a failed batch one at a time, so a row the database
+     * rejects can't fail the others. Rejected writes are kept for the next batch and dropped after
+     * {@link #MAX_ATTEMPTS} rejections. If the first writes fail as well the database is unreachable,
+     * then all writes are kept and nothing counts as an attempt.
+     *
+     * @param batch Failed batch
+     */
+    private void writeSeparately(Batch batch) {
+        // Newest first, writes kept from earlier batches are the likeliest to fail again
+        List<Integer> useIds = new ArrayList<>(batch.remainingUses.keySet());
+        List<Integer> deactivationIds = new ArrayList<>(batch.deactivations);
+        Collections.reverse(useIds);
+        Collections.reverse(deactivationIds);
+
+        Map<Integer, SQLException> failedUses = new LinkedHashMap<>();
+        Map<Integer, SQLException> failedDeactivations = new LinkedHashMap<>();
+        boolean anyWritten = false;
+
+        for (int id : useIds) {
+            if (!anyWritten && failedUses.size() >= UNREACHABLE_PROBES) {
+                break;
+            }
+
+            try {
+                batchWriter.writeBatch(List.of(), Map.of(id, batch.remainingUses.get(id)), Set.of());
+                useAttempts.remove(id);
+                anyWritten = true;
+            } catch (SQLException e) {
+                failedUses.put(id, e);
+            }
+        }
+
+        for (int id : deactivationIds) {
+            if (!anyWritten && failedUses.size() + failedDeactivations.size() >= UNREACHABLE_PROBES) {
+                break;
+            }
+
+            try {
+                batchWriter.writeBatch(List.of(), Map.of(), Set.of(id));
+                deactivationAttempts.remove(id);
+                anyWritten = true;
+            } catch (SQLException e) {
+                failedDeactivations.put(id, e);
+            }
+        }
+
+        if (!anyWritten) {
+            // Nothing goes through, keep everything until the database is back
+            retryRemainingUses.putAll(batch.remainingUses);
+            retryDeactivations.addAll(batch.deactivations);
+            return;
+        }
+
+        for (Map.Entry<Integer, SQLException> failed : failedUses.entrySet()) {
+            int id = failed.getKey();
+            if (useAttempts.merge(id, 1, Integer::sum) >= MAX_ATTEMPTS) {
+                useAttempts.remove(id);
+                logger.log(Level.SEVERE, "Dropped remaining uses " + batch.remainingUses.get(id) + " of purchase " + id
+                        + " after " + MAX_ATTEMPTS + " failed writes", failed.getValue());
+            } else {
+                retryRemainingUses.put(id, batch.remainingUses.get(id));
+            }
+        }
+
+        for (Map.Entry<Integer, SQLException> failed : failedDeactivations.entrySet()) {
+            int id = failed.getKey();
+            if (deactivationAttempts.merge(id, 1, Integer::sum) >= MAX_ATTEMPTS) {
+                deactivationAttempts.remove(id);
+                logger.log(Level.SEVERE, "Dropped deactivation of purchase " + id
+                        + " after " + MAX_ATTEMPTS + " failed writes", failed.getValue());
+            } else {
+                retryDeactivations.add(id);
+            }
+        }
+    }
+
+    /**
+     * Checks if failed writes are waiting to be retried
+     *
+     * @return Whether there are writes to retry
+     */
+    private boolean hasRetries() {
+        return !retryRemainingUses.isEmpty() || !retryDeactivations.isEmpty();
+    }
+
+    /**
+     * Writes coalesced from the queue
+     */
+    private static class Batch {
+        private final List<Purchase> inserts = new ArrayList<>();
+        private final Map<Integer, Integer> remainingUses = new LinkedHashMap<>();
+        private final Set<Integer> deactivations = new LinkedHashSet<>();
+        private final List<CompletableFuture<Void>> barriers = new ArrayList<>();
+
+        private boolean hasWrites() {
+            return !inserts.isEmpty() || !remainingUses.isEmpty() || !deactivations.isEmpty();
+        }
+
+        private int size() {
+            return inserts.size() + remainingUses.size() + deactivations.size();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.fusionslab.permissionshop.utils;
+
+import java.util.UUID;
+
+/**
+ * Utility methods for storing UUIDs in binary form
+ */
+public class UUIDUtils {
+
+    /**
+     * Converts a UUID to its 16-byte big-endian form
+     *
+     * @param uuid UUID to convert
+     * @return 16 bytes
+     */
+    public static byte[] toBytes(UUID uuid) {
+        byte[] bytes = new byte[16];
+        putLong(bytes, 0, uuid.getMostSignificantBits());
+        putLong(bytes, 8, uuid.getLeastSignificantBits());
+        return bytes;
+    }
+
+    /**
+     * Converts 16 big-endian bytes to a UUID
+     *
+     * @param bytes Bytes to convert
+     * @return UUID
+     * @throws IllegalArgumentException if the array is not 16 bytes long
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != 16) {
+            throw new IllegalArgumentException("Expected 16 bytes for a UUID");
+        }
+        return new UUID(getLong(bytes, 0), getLong(bytes, 8));
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
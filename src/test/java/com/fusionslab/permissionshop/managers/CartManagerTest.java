@@ -0,0 +1,41 @@
+package com.fusionslab.permissionshop.managers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CartManagerTest {
+
+    private final CartManager carts = new CartManager();
+    private final UUID player = UUID.randomUUID();
+
+    @Test
+    void removePurchasedKeepsItemsAddedDuringCheckout() {
+        carts.add(player, "vip", 1);
+        carts.add(player, "fly", 2);
+        Map<String, Integer> checkedOut = carts.getCart(player);
+
+        // Added while the purchase was running
+        carts.add(player, "fly", 3);
+        carts.add(player, "heal", 1);
+
+        carts.removePurchased(player, checkedOut);
+
+        assertEquals(Map.of("fly", 3, "heal", 1), carts.getCart(player));
+    }
+
+    @Test
+    void removePurchasedIgnoresRemovedItems() {
+        carts.add(player, "vip", 1);
+        Map<String, Integer> checkedOut = carts.getCart(player);
+        carts.remove(player, "vip");
+
+        carts.removePurchased(player, checkedOut);
+        carts.removePurchased(UUID.randomUUID(), checkedOut);
+
+        assertEquals(Map.of(), carts.getCart(player));
+    }
+}
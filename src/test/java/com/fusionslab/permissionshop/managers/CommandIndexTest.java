@@ -0,0 +1,83 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.PurchaseType;
+import com.fusionslab.permissionshop.models.ShopItem;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CommandIndexTest {
+
+    private static final int LOOKUPS = 200_000;
+
+    private final CommandIndex index = CommandIndex.build(List.of(
+            limitedCommand("fly", "/fly"),
+            limitedCommand("heal", "heal"),
+            new ShopItem("vip", "VIP", "", 10, PurchaseType.PERMANENT_PERMISSION, 0, 0, "shop.vip", "", true, "")
+    ), null);
+
+    @Test
+    void findCommandMatchesLabelIgnoringCase() {
+        CommandIndex.Entry entry = index.findCommand("/FlY");
+        assertNotNull(entry);
+        assertEquals("fly", entry.getLabel());
+        assertEquals("fly", entry.getCommandKey());
+    }
+
+    @Test
+    void findCommandStopsAtFirstSpace() {
+        CommandIndex.Entry entry = index.findCommand("/heal Notch now");
+        assertNotNull(entry);
+        assertEquals("heal", entry.getLabel());
+    }
+
+    @Test
+    void findCommandIgnoresOtherCommands() {
+        assertNull(index.findCommand("/flying"));
+        assertNull(index.findCommand("/fl"));
+        assertNull(index.findCommand("/"));
+        assertNull(index.findCommand("/vip"));
+    }
+
+    @Test
+    void findCommandDoesNotAllocate() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "JVM doesn't measure thread allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        String[] messages = {"/Fly", "/heal Notch", "/spawn", "/HEAL", "/warp home"};
+
+        // Warm up so the lookup is compiled before it's measured
+        int found = lookup(messages);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        found += lookup(messages);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(2 * LOOKUPS * 3 / messages.length, found);
+        // Reading the counter itself may allocate a little, a single object per lookup would be megabytes
+        assertTrue(allocated < 1024, "findCommand allocated " + allocated + " bytes over " + LOOKUPS + " lookups");
+    }
+
+    private int lookup(String[] messages) {
+        int found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (index.findCommand(messages[i % messages.length]) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static ShopItem limitedCommand(String id, String command) {
+        return new ShopItem(id, id, "", 100, PurchaseType.LIMITED_COMMAND, 0, 5, "", command, true, "");
+    }
+}
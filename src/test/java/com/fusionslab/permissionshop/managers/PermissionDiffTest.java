@@ -0,0 +1,133 @@
+package com.fusionslab.permissionshop.managers;
+
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.node.types.PermissionNode;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PermissionDiffTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @Test
+    void playerWithEverythingNeedsNoChanges() {
+        long expiry = System.currentTimeMillis() + HOUR;
+
+        PermissionDiff diff = PermissionDiff.compute(
+                List.of(node("shop.vip", 0), node("Shop.Fly", expiry)),
+                Map.of("shop.vip", 0L, "shop.fly", expiry),
+                Set.of("shop.vip", "shop.fly"));
+
+        assertEquals(Map.of(), diff.getMissing());
+        assertEquals(Set.of(), diff.getExtra());
+    }
+
+    @Test
+    void missingAndShorterNodesAreGranted() {
+        long now = System.currentTimeMillis();
+
+        PermissionDiff diff = PermissionDiff.compute(
+                List.of(node("shop.fly", now + HOUR), node("shop.vip", now + HOUR)),
+                Map.of("shop.fly", now + 2 * HOUR, "shop.vip", 0L, "shop.heal", now + HOUR),
+                Set.of());
+
+        assertEquals(Map.of("shop.fly", now + 2 * HOUR, "shop.vip", 0L, "shop.heal", now + HOUR), diff.getMissing());
+    }
+
+    @Test
+    void longestOfDuplicateNodesCounts() {
+        long now = System.currentTimeMillis();
+
+        PermissionDiff diff = PermissionDiff.compute(
+                List.of(node("shop.fly", now + HOUR), node("shop.fly", now + 3 * HOUR)),
+                Map.of("shop.fly", now + 2 * HOUR),
+                Set.of());
+
+        assertEquals(Map.of(), diff.getMissing());
+    }
+
+    @Test
+    void nodesWithoutPurchaseAreRevokedOnlyIfManaged() {
+        PermissionDiff diff = PermissionDiff.compute(
+                List.of(node("Shop.VIP", 0), node("other.plugin", 0), node("shop.fly", 0)),
+                Map.of("shop.fly", 0L),
+                Set.of("shop.vip", "shop.fly"));
+
+        assertEquals(Map.of(), diff.getMissing());
+        // Revoked under the name the node has
+        assertEquals(Set.of("Shop.VIP"), diff.getExtra());
+    }
+
+    @Test
+    void expiredAndNegatedNodesDontCount() {
+        long now = System.currentTimeMillis();
+
+        PermissionDiff diff = PermissionDiff.compute(
+                List.of(node("shop.fly", now - HOUR), negated("shop.vip")),
+                Map.of("shop.fly", now + HOUR, "shop.vip", 0L),
+                Set.of("shop.fly", "shop.vip"));
+
+        assertEquals(Map.of("shop.fly", now + HOUR, "shop.vip", 0L), diff.getMissing());
+        assertEquals(Set.of(), diff.getExtra());
+    }
+
+    @Test
+    void contextualNodesDontCount() {
+        PermissionDiff diff = PermissionDiff.compute(
+                List.of(contextual("shop.fly"), contextual("shop.vip")),
+                Map.of("shop.fly", 0L),
+                Set.of("shop.fly", "shop.vip"));
+
+        // Only granted on one server, the global node is still missing
+        assertEquals(Map.of("shop.fly", 0L), diff.getMissing());
+        assertEquals(Set.of(), diff.getExtra());
+    }
+
+    private static PermissionNode node(String permission, long expiry) {
+        return node(permission, expiry, true, false);
+    }
+
+    private static PermissionNode negated(String permission) {
+        return node(permission, 0, false, false);
+    }
+
+    private static PermissionNode contextual(String permission) {
+        return node(permission, 0, true, true);
+    }
+
+    /**
+     * Creates a node answering the calls PermissionDiff makes
+     */
+    private static PermissionNode node(String permission, long expiry, boolean value, boolean contextual) {
+        return (PermissionNode) Proxy.newProxyInstance(PermissionNode.class.getClassLoader(),
+                new Class<?>[]{PermissionNode.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getPermission", "getKey" -> permission;
+                    case "getValue" -> value;
+                    case "hasExpiry" -> expiry > 0;
+                    case "getExpiry" -> expiry > 0 ? Instant.ofEpochMilli(expiry) : null;
+                    case "hasExpired" -> expiry > 0 && expiry < System.currentTimeMillis();
+                    case "getContexts" -> contexts(contextual);
+                    case "toString" -> permission;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a context set, the real ones need a running LuckPerms
+     */
+    private static ImmutableContextSet contexts(boolean server) {
+        return (ImmutableContextSet) Proxy.newProxyInstance(ImmutableContextSet.class.getClassLoader(),
+                new Class<?>[]{ImmutableContextSet.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "isEmpty" -> !server;
+                    case "toString" -> server ? "{server=lobby}" : "{}";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,55 @@
+package com.fusionslab.permissionshop.managers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PurchaseSerializerTest {
+
+    private final PurchaseSerializer serializer = new PurchaseSerializer();
+    private final UUID player = UUID.randomUUID();
+
+    @Test
+    void purchasesOfOnePlayerRunInOrder() {
+        List<Integer> started = new ArrayList<>();
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+
+        serializer.submit(player, 0, () -> {
+            started.add(1);
+            return first;
+        });
+        CompletableFuture<Integer> second = serializer.submit(player, 0, () -> {
+            started.add(2);
+            return CompletableFuture.completedFuture(2);
+        });
+
+        assertEquals(List.of(1), started);
+        first.complete(1);
+        assertEquals(List.of(1, 2), started);
+        assertEquals(2, (int) second.join());
+    }
+
+    @Test
+    void fullQueueRejectsUntilAPurchaseCompletes() {
+        CompletableFuture<Boolean> running = new CompletableFuture<>();
+        serializer.submit(player, 2, () -> running);
+        assertNotNull(serializer.submit(player, 2, () -> CompletableFuture.completedFuture(true)));
+
+        assertNull(serializer.submit(player, 2, () -> CompletableFuture.completedFuture(true)));
+        assertEquals(1, serializer.getRejected());
+        // Other players have queues of their own
+        assertNotNull(serializer.submit(UUID.randomUUID(), 2, () -> CompletableFuture.completedFuture(true)));
+
+        running.complete(true);
+        assertEquals(0, serializer.getPending());
+        assertNotNull(serializer.submit(player, 2, () -> CompletableFuture.completedFuture(true)));
+        assertEquals(2, serializer.getMaxQueueLength());
+    }
+}
@@ -0,0 +1,27 @@
+package com.fusionslab.permissionshop.managers;
+
+import com.fusionslab.permissionshop.models.Purchase;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UseLedgerTest {
+
+    private final UseLedger ledger = new UseLedger();
+    private final UUID player = UUID.randomUUID();
+
+    @Test
+    void rekeyKeepsOldestPurchaseFirst() {
+        // Bought later but stored under a lower ID, e.g. by another server
+        ledger.add("fly", new Purchase(7, player, "fly_small", 1000, 0, 2, true));
+        ledger.add("fly", new Purchase(3, player, "fly_large", 2000, 0, 5, true));
+
+        ledger.rekey(itemId -> "fly");
+
+        assertEquals(7, ledger.consume("fly").getId());
+        assertEquals(7, ledger.consume("fly").getId());
+        assertEquals(3, ledger.consume("fly").getId());
+    }
+}
@@ -0,0 +1,79 @@
+package com.fusionslab.permissionshop.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ItemDictionaryTest {
+
+    private final ItemDictionary items = new ItemDictionary("INSERT IGNORE INTO items (item_key) VALUES (?)");
+    private Connection connection;
+
+    @BeforeEach
+    void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:items;MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, item_key VARCHAR(64) NOT NULL, " +
+                    "CONSTRAINT uk_items_item_key UNIQUE (item_key))");
+        }
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void rolledBackItemIsAddedAgain() throws SQLException {
+        connection.setAutoCommit(false);
+        items.getRef(connection, "vip");
+        items.rollback(connection);
+        connection.rollback();
+        assertFalse(exists("vip"));
+
+        int ref = items.getRef(connection, "vip");
+        connection.commit();
+        items.commit(connection);
+
+        assertTrue(exists("vip"));
+        assertEquals("vip", items.getItemId(connection, ref));
+    }
+
+    @Test
+    void committedItemIsCached() throws SQLException {
+        connection.setAutoCommit(false);
+        int ref = items.getRef(connection, "fly");
+        // Reused within the same transaction before it commits
+        assertEquals(ref, items.getRef(connection, "fly"));
+        connection.commit();
+        items.commit(connection);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM items");
+        }
+        connection.commit();
+
+        assertEquals(ref, items.getRef(connection, "fly"));
+        assertFalse(exists("fly"));
+    }
+
+    private boolean exists(String itemId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM items WHERE item_key = ?")) {
+            statement.setString(1, itemId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.models.Purchase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs MySQLStorage against H2 in MySQL mode
+ */
+class MySQLStorageTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final Logger LOGGER = Logger.getLogger(MySQLStorageTest.class.getName());
+    private static final UUID PLAYER = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    private final List<ConnectionPool> pools = new ArrayList<>();
+    private String url;
+    // Keeps the in-memory database alive between pools
+    private Connection connection;
+
+    @BeforeEach
+    void openDatabase() throws SQLException {
+        url = "jdbc:h2:mem:shop" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        connection = DriverManager.getConnection(url, "sa", "");
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        pools.forEach(ConnectionPool::close);
+        connection.close();
+    }
+
+    @Test
+    void savePurchasesOnFreshDatabase() throws SQLException {
+        MySQLStorage storage = newStorage();
+
+        List<Integer> ids = storage.savePurchases(List.of(
+                new Purchase(PLAYER, "vip", 1000, 0, 0, true),
+                new Purchase(PLAYER, "fly", 2000, 5000, 3, true)
+        ));
+
+        assertEquals(2, ids.size());
+        assertEquals(4, schemaVersion());
+
+        List<Purchase> purchases = storage.getPlayerPurchases(PLAYER);
+        assertEquals(2, purchases.size());
+        Purchase fly = storage.getPurchase(ids.get(1));
+        assertEquals(PLAYER, fly.getPlayerUuid());
+        assertEquals("fly", fly.getItemId());
+        assertEquals(5000, fly.getExpirationTime());
+        assertEquals(3, fly.getRemainingUses());
+    }
+
+    @Test
+    void writeBatchAppliesInsertsUsesAndDeactivations() throws SQLException {
+        MySQLStorage storage = newStorage();
+        int first = storage.reservePurchaseId();
+        int second = storage.reservePurchaseId();
+
+        storage.writeBatch(List.of(
+                new Purchase(first, PLAYER, "fly", 1000, 0, 5, true),
+                new Purchase(second, PLAYER, "vip", 1000, 0, 0, true)
+        ), Map.of(), Set.of());
+        storage.writeBatch(List.of(), Map.of(first, 2), Set.of(second));
+
+        assertEquals(2, storage.getPurchase(first).getRemainingUses());
+        assertFalse(storage.getPurchase(second).isActive());
+        assertEquals(1, storage.getActivePlayerPurchases(PLAYER).size());
+    }
+
+    @Test
+    void migrationResumesAfterPartialFailure() throws SQLException {
+        createVersion2Schema();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO purchases (id, player_uuid, item_id, purchase_time, expiration_time, remaining_uses, active) " +
+                    "VALUES (7, '" + PLAYER + "', 'fly', 1000, 0, 4, TRUE)");
+            // Migration 3 stopped after its first ALTER, which MySQL had already committed
+            statement.execute("CREATE TABLE items (id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, item_key VARCHAR(64) NOT NULL, " +
+                    "CONSTRAINT uk_items_item_key UNIQUE (item_key))");
+            statement.execute("INSERT INTO items (item_key) VALUES ('fly')");
+            statement.execute("ALTER TABLE purchases ADD COLUMN player_uuid_bin BINARY(16) NULL AFTER player_uuid");
+            statement.execute("DROP INDEX idx_purchases_player_active ON purchases");
+        }
+
+        MySQLStorage storage = newStorage();
+
+        assertEquals(4, schemaVersion());
+        Purchase migrated = storage.getPurchase(7);
+        assertEquals(PLAYER, migrated.getPlayerUuid());
+        assertEquals("fly", migrated.getItemId());
+        assertEquals(4, migrated.getRemainingUses());
+        assertEquals(1, storage.getActivePlayerPurchases(PLAYER).size());
+        // New IDs continue after the migrated rows
+        assertTrue(storage.reservePurchaseId() > 7);
+    }
+
+    @Test
+    void migratedDatabaseStartsAgain() throws SQLException {
+        newStorage().savePurchase(new Purchase(PLAYER, "vip", 1000, 0, 0, true));
+
+        MySQLStorage restarted = newStorage();
+
+        assertEquals(4, schemaVersion());
+        assertEquals(1, restarted.getPlayerPurchases(PLAYER).size());
+    }
+
+    @Test
+    void serversSharingDatabaseReserveDistinctIds() throws SQLException {
+        MySQLStorage first = newStorage();
+        MySQLStorage second = newStorage();
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 120; i++) {
+            assertTrue(ids.add(first.reservePurchaseId()));
+            assertTrue(ids.add(second.reservePurchaseId()));
+        }
+        for (int id : second.savePurchases(List.of(new Purchase(PLAYER, "vip", 1000, 0, 0, true)))) {
+            assertTrue(ids.add(id));
+        }
+    }
+
+    private MySQLStorage newStorage() {
+        ConnectionPool pool = new ConnectionPool(url, "sa", "", 2, 1000, 0);
+        pools.add(pool);
+        return new MySQLStorage(LOGGER, pool);
+    }
+
+    private int schemaVersion() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Creates the schema as migrations 1 and 2 left it
+     */
+    private void createVersion2Schema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE schema_version (version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, applied_at BIGINT NOT NULL)");
+            statement.execute("INSERT INTO schema_version VALUES (1, 'Create purchases table', 0), (2, 'Add composite indexes', 0)");
+            statement.execute("CREATE TABLE purchases (" +
+                    "id INT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
+                    "player_uuid VARCHAR(36) NOT NULL," +
+                    "item_id VARCHAR(64) NOT NULL," +
+                    "purchase_time BIGINT NOT NULL," +
+                    "expiration_time BIGINT NOT NULL," +
+                    "remaining_uses INT NOT NULL," +
+                    "active BOOLEAN NOT NULL)");
+            statement.execute("CREATE INDEX idx_purchases_player_active ON purchases (player_uuid, active)");
+            statement.execute("CREATE INDEX idx_purchases_active_expiration ON purchases (active, expiration_time)");
+            statement.execute("CREATE INDEX idx_purchases_item ON purchases (item_id)");
+        }
+    }
+}
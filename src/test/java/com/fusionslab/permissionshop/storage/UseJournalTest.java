@@ -0,0 +1,149 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.models.Purchase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UseJournalTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final UUID PLAYER = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    @TempDir
+    File folder;
+
+    private File file;
+    private Connection connection;
+    private MySQLStorage storage;
+
+    @BeforeEach
+    void openStorage() throws SQLException {
+        file = new File(folder, "uses.journal");
+
+        String url = "jdbc:h2:mem:journal" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        connection = DriverManager.getConnection(url, "sa", "");
+        storage = new MySQLStorage(Logger.getLogger(UseJournalTest.class.getName()),
+                new ConnectionPool(url, "sa", "", 2, 1000, 0));
+    }
+
+    @AfterEach
+    void closeStorage() throws SQLException {
+        storage.closeConnection();
+        connection.close();
+    }
+
+    @Test
+    void recordsSurviveReopenWithLowestUsesWinning() throws IOException {
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(1, 5);
+            journal.append(1, 4);
+            journal.append(2, 9);
+        }
+
+        try (UseJournal journal = new UseJournal(file, true)) {
+            assertEquals(Map.of(1, 4, 2, 9), journal.read());
+        }
+    }
+
+    @Test
+    void tornRecordIsDroppedOnOpen() throws IOException {
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(1, 3);
+        }
+        // A crash in the middle of an append
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 7, 0});
+        }
+
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(2, 1);
+            assertEquals(Map.of(1, 3, 2, 1), journal.read());
+        }
+    }
+
+    @Test
+    void compactionKeepsRecordsAppendedAfterCheckpoint() throws IOException {
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(1, 5);
+            journal.append(2, 9);
+            UseJournal.Checkpoint checkpoint = journal.checkpoint();
+            // Recorded while the compaction was waiting for a storage thread
+            journal.append(2, 8);
+            journal.append(3, 1);
+
+            assertTrue(journal.compact(Map.of(1, 5), checkpoint));
+            journal.append(3, 0);
+        }
+
+        try (UseJournal journal = new UseJournal(file, false)) {
+            assertEquals(Map.of(1, 5, 2, 8, 3, 0), journal.read());
+        }
+        assertFalse(new File(folder, "uses.journal.tmp").exists());
+    }
+
+    @Test
+    void compactionAfterRewriteIsSkipped() throws IOException {
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(1, 5);
+            UseJournal.Checkpoint checkpoint = journal.checkpoint();
+            journal.rewrite(Map.of(2, 3));
+
+            assertFalse(journal.compact(Map.of(), checkpoint));
+            assertEquals(Map.of(2, 3), journal.read());
+        }
+    }
+
+    @Test
+    void replayStoresUsesAndEmptiesJournal() throws IOException {
+        List<Integer> ids = storage.savePurchases(List.of(
+                new Purchase(PLAYER, "fly", 1000, 0, 5, true),
+                new Purchase(PLAYER, "heal", 1000, 0, 2, true)
+        ));
+
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(ids.get(0), 4);
+            journal.append(ids.get(0), 3);
+            journal.append(ids.get(1), 0);
+
+            assertEquals(2, journal.replay(storage));
+            assertEquals(Map.of(), journal.read());
+        }
+
+        assertEquals(3, storage.getPurchase(ids.get(0)).getRemainingUses());
+        assertFalse(storage.getPurchase(ids.get(1)).isActive());
+    }
+
+    @Test
+    void replayKeepsRecordsStorageDidNotConfirm() throws IOException {
+        int id = storage.savePurchase(new Purchase(PLAYER, "fly", 1000, 0, 5, true));
+
+        try (UseJournal journal = new UseJournal(file, false)) {
+            journal.append(id, 2);
+            // Not in the database, e.g. written by a server whose storage was replaced
+            journal.append(id + 1000, 1);
+
+            assertEquals(-1, journal.replay(storage));
+            assertEquals(Map.of(id, 2, id + 1000, 1), journal.read());
+        }
+
+        assertEquals(2, storage.getPurchase(id).getRemainingUses());
+    }
+}
@@ -0,0 +1,156 @@
+package com.fusionslab.permissionshop.storage;
+
+import com.fusionslab.permissionshop.models.Purchase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs WriteBehindStorage in front of a MySQLStorage on H2 whose batch writes can be made to fail
+ */
+class WriteBehindStorageTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindStorageTest.class.getName());
+    private static final UUID PLAYER = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    private Connection connection;
+    private FailingStorage storage;
+    private WriteBehindStorage writeBehind;
+
+    @BeforeEach
+    void openStorage() throws SQLException {
+        String url = "jdbc:h2:mem:writebehind" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        connection = DriverManager.getConnection(url, "sa", "");
+        ConnectionPool pool = new ConnectionPool(url, "sa", "", 2, 1000, 0);
+        storage = new FailingStorage(pool);
+        writeBehind = new WriteBehindStorage(LOGGER, storage, 500, 0);
+    }
+
+    @AfterEach
+    void closeStorage() throws SQLException {
+        writeBehind.closeConnection();
+        connection.close();
+    }
+
+    @Test
+    void queuedPurchasesAreWrittenInOneBatch() {
+        List<Integer> ids = writeBehind.savePurchases(List.of(
+                new Purchase(PLAYER, "vip", 1000, 0, 0, true),
+                new Purchase(PLAYER, "fly", 1000, 0, 5, true)
+        ));
+
+        assertEquals(2, ids.size());
+        assertEquals(1, storage.batches.get());
+        assertEquals(2, storage.getPlayerPurchases(PLAYER).size());
+    }
+
+    @Test
+    void failedBatchFailsItsInserts() {
+        storage.failures.set(1);
+
+        CompletableFuture<List<Integer>> saved = writeBehind.queuePurchases(List.of(new Purchase(PLAYER, "vip", 1000, 0, 0, true)));
+
+        assertThrows(CompletionException.class, saved::join);
+        assertTrue(storage.getPlayerPurchases(PLAYER).isEmpty());
+        // The storage recovered, later purchases are written again
+        assertEquals(1, writeBehind.savePurchases(List.of(new Purchase(PLAYER, "fly", 1000, 0, 5, true))).size());
+    }
+
+    @Test
+    void failedUpdatesAreRetried() {
+        List<Integer> ids = writeBehind.savePurchases(List.of(
+                new Purchase(PLAYER, "fly", 1000, 0, 5, true),
+                new Purchase(PLAYER, "vip", 1000, 0, 0, true)
+        ));
+        storage.failures.set(1);
+
+        writeBehind.updatePurchaseUses(ids.get(0), 4);
+        writeBehind.deactivatePurchase(ids.get(1));
+        writeBehind.flush();
+
+        assertTrue(writeBehind.flush());
+        assertEquals(4, storage.getPurchase(ids.get(0)).getRemainingUses());
+        assertFalse(storage.getPurchase(ids.get(1)).isActive());
+    }
+
+    @Test
+    void newerUpdateReplacesRetriedOne() {
+        int id = writeBehind.savePurchase(new Purchase(PLAYER, "fly", 1000, 0, 5, true));
+        storage.failures.set(1);
+
+        writeBehind.updatePurchaseUses(id, 4);
+        writeBehind.flush();
+        writeBehind.updatePurchaseUses(id, 3);
+
+        assertTrue(writeBehind.flush());
+        assertEquals(3, storage.getPurchase(id).getRemainingUses());
+    }
+
+    @Test
+    void rejectedUpdateIsDroppedWithoutHoldingBackOthers() {
+        List<Integer> ids = writeBehind.savePurchases(List.of(
+                new Purchase(PLAYER, "fly", 1000, 0, 5, true),
+                new Purchase(PLAYER, "heal", 1000, 0, 10, true)
+        ));
+        storage.poisoned.add(ids.get(0));
+
+        writeBehind.updatePurchaseUses(ids.get(0), 4);
+        for (int uses = 9; uses > 4; uses--) {
+            // Written on its own every time the batch with the rejected update fails
+            writeBehind.updatePurchaseUses(ids.get(1), uses);
+            writeBehind.flush();
+            assertEquals(uses, storage.getPurchase(ids.get(1)).getRemainingUses());
+        }
+
+        // Dropped after too many rejections, later batches go through again
+        assertTrue(writeBehind.flush());
+        assertEquals(5, storage.getPurchase(ids.get(0)).getRemainingUses());
+    }
+
+    /**
+     * Storage whose next batch writes fail as if the database was unreachable,
+     * and whose batches with a poisoned purchase are always rejected
+     */
+    private static final class FailingStorage extends MySQLStorage {
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger batches = new AtomicInteger();
+        private final Set<Integer> poisoned = ConcurrentHashMap.newKeySet();
+
+        private FailingStorage(ConnectionPool pool) {
+            super(LOGGER, pool);
+        }
+
+        @Override
+        public void writeBatch(List<Purchase> inserts, Map<Integer, Integer> remainingUses, Set<Integer> deactivations) throws SQLException {
+            batches.incrementAndGet();
+            if (failures.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                throw new SQLException("Database unreachable");
+            }
+            for (int id : poisoned) {
+                if (remainingUses.containsKey(id) || deactivations.contains(id)) {
+                    throw new SQLException("Rejected update of purchase " + id);
+                }
+            }
+            super.writeBatch(inserts, remainingUses, deactivations);
+        }
+    }
+}